@@ -0,0 +1,20 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.maintenance.blob-migration")
+@Getter
+@Setter
+public class BlobMigrationProperties
+{
+    // one-off: move files stored at their own path into the content-addressed blob layout, deduplicating them
+    private boolean enabled = false;
+    // rows read per keyset page
+    private int batchSize = 500;
+    // how long a migrated file's own path stays after its row points at the blob, as for storage-rebalance
+    private long oldPathGraceMs = 60_000;
+}
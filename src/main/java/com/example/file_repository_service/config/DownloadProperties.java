@@ -0,0 +1,21 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.download")
+@Getter
+@Setter
+public class DownloadProperties
+{
+    // hand bodies of at least this size to the connector's sendfile (kernel to socket), when it supports it
+    private boolean sendfileEnabled = true;
+    private long sendfileMinBytes = 48 * 1024;
+    // ranges accepted in one request; more are answered with the whole file
+    private int maxRanges = 16;
+    // sent with every download and 304; blank sends none
+    private String cacheControl = "no-cache";
+}
@@ -0,0 +1,19 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.embedding.cache")
+@Getter
+@Setter
+public class EmbeddingCacheProperties
+{
+    private boolean enabled = true;
+    // budget of the in-memory tier; least recently used vectors are dropped beyond it
+    private long maxMemoryBytes = 64L * 1024 * 1024;
+    // keep vectors in cf_filerepo_embedding_cache, so they survive restarts and are shared between nodes
+    private boolean persistent = true;
+}
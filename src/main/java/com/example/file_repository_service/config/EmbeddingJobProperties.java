@@ -0,0 +1,22 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.embedding.jobs")
+@Getter
+@Setter
+public class EmbeddingJobProperties
+{
+    private boolean workerEnabled = true;
+    private int workerThreads = 2;
+    private long pollIntervalMs = 2000;
+    private int maxAttempts = 5;
+    private long initialBackoffMs = 30_000;
+    private long maxBackoffMs = 30 * 60_000;
+    // a running job whose progress was not refreshed for this long is considered abandoned
+    private long leaseTimeoutMs = 10 * 60_000;
+}
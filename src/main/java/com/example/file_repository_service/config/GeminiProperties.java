@@ -0,0 +1,33 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "gemini.api")
+@Getter
+@Setter
+public class GeminiProperties
+{
+    private String key;
+    // point at a local stub server for tests and benchmarks
+    private String baseUrl = "https://generativelanguage.googleapis.com/v1beta";
+    private String model = "gemini-embedding-001";
+
+    // texts packed into one batchEmbedContents call
+    private int batchSize = 32;
+    // requests in flight at the same time, shared by all callers
+    private int maxConcurrentRequests = 4;
+
+    private int maxRetries = 4;
+    private long initialBackoffMs = 500;
+    private long maxBackoffMs = 16_000;
+    private long connectTimeoutMs = 10_000;
+    private long requestTimeoutMs = 60_000;
+
+    // consecutive failures before calls fail fast, and for how long
+    private int circuitBreakerFailureThreshold = 5;
+    private long circuitBreakerOpenMs = 30_000;
+}
@@ -0,0 +1,19 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.maintenance.media-type-backfill")
+@Getter
+@Setter
+public class MediaTypeBackfillProperties
+{
+    // one-off: re-detect the stored media type of rows uploaded before it was taken from Tika
+    private boolean enabled = false;
+    // rows read per keyset page; each page is detected in parallel before the next one is read
+    private int batchSize = 500;
+    private int threads = 4;
+}
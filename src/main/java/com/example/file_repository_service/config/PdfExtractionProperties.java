@@ -0,0 +1,24 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.embedding.extraction")
+@Getter
+@Setter
+public class PdfExtractionProperties
+{
+    // extraction threads shared by all documents
+    private int workerThreads = 4;
+    // workers (each with its own document handle) one document may use at once
+    private int workersPerDocument = 4;
+    // consecutive pages a worker takes at a time
+    private int pagesPerRange = 16;
+    // extracted pages waiting for the embedding stage; workers block beyond it
+    private int queueCapacity = 64;
+    // heap one document handle may use for its parsed streams before spilling to the temp directory
+    private long maxMainMemoryBytes = 16L * 1024 * 1024;
+}
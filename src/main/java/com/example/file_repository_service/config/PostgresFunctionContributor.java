@@ -0,0 +1,32 @@
+package com.example.file_repository_service.config;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.BasicType;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers PostgreSQL operators as HQL/Criteria functions.
+ * Operators have to be rendered as-is (not as their backing functions) for PostgreSQL to use the GIN indexes.
+ * Registered through META-INF/services/org.hibernate.boot.model.FunctionContributor.
+ */
+public class PostgresFunctionContributor implements FunctionContributor {
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        BasicType<Boolean> booleanType = functionContributions.getTypeConfiguration()
+                .getBasicTypeRegistry()
+                .resolve(StandardBasicTypes.BOOLEAN);
+
+        // pg_trgm word similarity: the search term (?2) against the best matching stretch of the column (?1), so a
+        // short term still matches inside a long name; uses the gin_trgm_ops indexes
+        functionContributions.getFunctionRegistry()
+                .registerPattern("trgm_word_match", "(?2 <% ?1)", booleanType);
+
+        // jsonb containment and jsonpath predicate, both supported by the jsonb_path_ops GIN index
+        functionContributions.getFunctionRegistry()
+                .registerPattern("jsonb_contains", "(?1 @> cast(?2 as jsonb))", booleanType);
+        functionContributions.getFunctionRegistry()
+                .registerPattern("jsonb_path_match", "(?1 @@ cast(?2 as jsonpath))", booleanType);
+    }
+}
@@ -13,4 +13,13 @@ public class StorageProperties
 {
     private String basePath;
     private String tempPath;
+    // directory levels below {tenantCode}/{yyyy_MM}/, two hex characters each from a hash of the file id
+    // (256 directories per level); 0 keeps the flat month directory
+    private int shardLevels = 2;
+    // store each distinct content once under _blobs/ and let file rows share it (reference counted)
+    private boolean contentAddressed = false;
+    // TENANT dedupes within one tenant's files only, GLOBAL across all tenants
+    private BlobScope blobScope = BlobScope.TENANT;
+
+    public enum BlobScope { TENANT, GLOBAL }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.maintenance.storage-rebalance")
+@Getter
+@Setter
+public class StorageRebalanceProperties
+{
+    // move files stored under an older layout (flat month folders, other shard levels) into the current one
+    private boolean enabled = false;
+    // rows read per keyset page
+    private int batchSize = 500;
+    // moves per second, so the pass does not compete with uploads and downloads for disk and database
+    private int maxFilesPerSecond = 50;
+    // how long the old path stays after the row points at the new one; downloads that already resolved it
+    // (sendfile opens the file after the request handler returns) still find it
+    private long oldPathGraceMs = 60_000;
+}
@@ -0,0 +1,61 @@
+package com.example.file_repository_service.config;
+
+import com.example.file_repository_service.util.VectorQuantizer;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.vector")
+@Getter
+@Setter
+public class VectorSearchProperties
+{
+    public enum Engine { SQL, HNSW, FLAT }
+
+    // SQL ranks in pgvector; for tenant wide search HNSW keeps an in-process graph per tenant
+    // and FLAT scans memory-mapped segments exactly
+    private Engine engine = Engine.SQL;
+    // in-process engines re-read the rows written after their watermark this often, which is how pages
+    // embedded on other nodes reach them; a page count that still disagrees afterwards triggers a rebuild
+    private long syncIntervalMs = 30_000;
+    // rows up to this much older than the watermark are read again, covering commit delay and node clock skew
+    private long syncOverlapMs = 120_000;
+    private Hnsw hnsw = new Hnsw();
+    private Flat flat = new Flat();
+
+    @Getter
+    @Setter
+    public static class Hnsw
+    {
+        // links per node; higher improves recall at the cost of memory and insert time
+        private int m = 16;
+        private int efConstruction = 200;
+        // beam width at query time, the main recall/latency knob
+        private int efSearch = 64;
+        private String snapshotPath = "./index";
+        private long snapshotIntervalMs = 60_000;
+        // an index whose tombstones exceed this share of its nodes is rebuilt from the database
+        private double maxDeletedRatio = 0.3;
+    }
+
+    @Getter
+    @Setter
+    public static class Flat
+    {
+        // node-local directory, one segment per tenant; must not be shared between nodes
+        private String segmentPath = "./index/segments";
+        // rows scanned by one fork-join task
+        private int scanChunkRows = 8192;
+        // 0 uses the common fork-join pool
+        private int scanParallelism = 0;
+        private long compactionIntervalMs = 300_000;
+        // segments are compacted once tombstones exceed this share of their rows
+        private double compactDeletedRatio = 0.2;
+        // NONE scans float rows; INT8 / BINARY scan quantized rows and rescore the best candidates exactly
+        private VectorQuantizer.Mode quantization = VectorQuantizer.Mode.NONE;
+        // candidates kept by the quantized pass, as a multiple of topK
+        private int rescoreMultiplier = 8;
+    }
+}
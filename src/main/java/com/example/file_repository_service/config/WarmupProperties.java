@@ -0,0 +1,17 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.warmup")
+@Getter
+@Setter
+public class WarmupProperties
+{
+    private boolean enabled = false;
+    // where PDFBox keeps its font cache (.pdfbox.cache); point it at a volume so restarts reuse it
+    private String fontCacheDir = "./cache/pdfbox";
+}
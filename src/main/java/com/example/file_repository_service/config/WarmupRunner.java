@@ -0,0 +1,126 @@
+package com.example.file_repository_service.config;
+
+import com.example.file_repository_service.service.PdfTextExtractor;
+import com.example.file_repository_service.util.MediaTypeDetector;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.FontMappers;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in ({@code file.repository.warmup.enabled}) startup phase that pays the one-time costs of PDF handling
+ * before traffic arrives: the PDFBox font cache (persisted under {@code font-cache-dir}), Tika's MIME
+ * repository and a synthetic PDF run through detection and extraction. Application runners finish before
+ * the readiness state switches to ACCEPTING_TRAFFIC, so the readiness probe stays down until this is done.
+ */
+@Log4j2
+@Component
+public class WarmupRunner implements ApplicationRunner {
+
+    private static final String SAMPLE_TEXT = "File repository warm-up";
+
+    private final WarmupProperties properties;
+    private final StorageProperties storageProperties;
+    private final MediaTypeDetector mediaTypeDetector;
+    private final PdfTextExtractor pdfTextExtractor;
+    private final MeterRegistry meterRegistry;
+
+    public WarmupRunner(WarmupProperties properties,
+                        StorageProperties storageProperties,
+                        MediaTypeDetector mediaTypeDetector,
+                        PdfTextExtractor pdfTextExtractor,
+                        MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.storageProperties = storageProperties;
+        this.mediaTypeDetector = mediaTypeDetector;
+        this.pdfTextExtractor = pdfTextExtractor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isEnabled()) return;
+
+        long start = System.nanoTime();
+        timed("fonts", this::warmFontCache);
+        timed("tika", () -> mediaTypeDetector.detectMimeType(SAMPLE_TEXT.getBytes(StandardCharsets.UTF_8)));
+        timed("pdf", this::extractSamplePdf);
+        long took = System.nanoTime() - start;
+
+        Timer.builder("startup.warmup").tag("phase", "total").register(meterRegistry).record(took, TimeUnit.NANOSECONDS);
+        log.info("Warm-up finished - took={} ms", TimeUnit.NANOSECONDS.toMillis(took));
+    }
+
+    // a failing phase only costs the first request its latency again, it never blocks startup
+    private void timed(String phase, WarmupStep step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+        } catch (Exception e) {
+            log.warn("Warm-up phase failed - phase={}, error={}", phase, e.getMessage(), e);
+        }
+        long took = System.nanoTime() - start;
+        Timer.builder("startup.warmup").tag("phase", phase).register(meterRegistry).record(took, TimeUnit.NANOSECONDS);
+        log.info("Warm-up phase done - phase={}, took={} ms", phase, TimeUnit.NANOSECONDS.toMillis(took));
+    }
+
+    private void warmFontCache() throws IOException {
+        Path cacheDir = Paths.get(properties.getFontCacheDir()).toAbsolutePath();
+        Files.createDirectories(cacheDir);
+        // read once when the font provider is created, so it must be set before any PDFBox font lookup
+        System.setProperty("pdfbox.fontcache", cacheDir.toString());
+        // creating the provider scans the system fonts, or loads the cache file a previous start wrote
+        FontMappers.instance().getFontBoxFont("Helvetica", null);
+    }
+
+    private void extractSamplePdf() throws IOException {
+        byte[] pdf;
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(72, 720);
+                content.showText(SAMPLE_TEXT);
+                content.endText();
+            }
+            document.save(out);
+            pdf = out.toByteArray();
+        }
+
+        Path tempDir = Paths.get(storageProperties.getTempPath() != null ? storageProperties.getTempPath() : ".");
+        Files.createDirectories(tempDir);
+        Path sample = Files.createTempFile(tempDir, "warmup", ".pdf");
+        try {
+            Files.write(sample, pdf);
+            String mimeType = mediaTypeDetector.detectMimeType(sample);
+            try (PdfTextExtractor.PageStream pages = pdfTextExtractor.open(sample)) {
+                PdfTextExtractor.ExtractedPage extracted = pages.next();
+                log.debug("Warm-up sample - mimeType={}, text='{}'", mimeType, extracted != null ? extracted.text() : null);
+            }
+        } finally {
+            Files.deleteIfExists(sample);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WarmupStep {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.file_repository_service.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "file.repository.upload.zip")
+@Getter
+@Setter
+public class ZipValidationProperties
+{
+    private int maxEntries = 10_000;
+    // sum of all entries once inflated
+    private long maxTotalUncompressedBytes = 1024L * 1024 * 1024;
+    // inflated bytes per archive byte, for the archive as a whole and for every single entry
+    private int maxCompressionRatio = 100;
+}
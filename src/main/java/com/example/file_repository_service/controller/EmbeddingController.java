@@ -3,8 +3,12 @@ package com.example.file_repository_service.controller;
 import com.example.file_repository_service.dto.request.EmbeddingSearchRequest;
 import com.example.file_repository_service.dto.response.ApiResponse;
 import com.example.file_repository_service.entity.Embedding;
+import com.example.file_repository_service.entity.EmbeddingJob;
+import com.example.file_repository_service.service.EmbeddingJobService;
 import com.example.file_repository_service.service.EmbeddingService;
 import com.example.file_repository_service.service.GeminiClient;
+import com.example.file_repository_service.util.VectorQuantizer;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -19,23 +23,38 @@ public class EmbeddingController {
 
     private final EmbeddingService embeddingService;
     private final GeminiClient geminiClient;
+    private final EmbeddingJobService embeddingJobService;
 
-    public EmbeddingController(EmbeddingService embeddingService, GeminiClient geminiClient) {
+    public EmbeddingController(EmbeddingService embeddingService, GeminiClient geminiClient,
+                               EmbeddingJobService embeddingJobService) {
         this.embeddingService = embeddingService;
         this.geminiClient = geminiClient;
+        this.embeddingJobService = embeddingJobService;
     }
 
 
 
-    // Generate embeddings for a PDF file
+    // Queue embedding generation for a PDF file, processed asynchronously by the job workers
     @PostMapping("/embeddings/{fileId}")
-    public ResponseEntity<ApiResponse<String>> generateEmbeddingsForFile(
+    public ResponseEntity<ApiResponse<EmbeddingJob>> generateEmbeddingsForFile(
             @PathVariable Long tenantId,
             @PathVariable String fileId
     ) {
         log.info("Generate embeddings request - tenantId={}, fileId={}", tenantId, fileId);
-        embeddingService.generateEmbeddingsForFile(tenantId, fileId);
-        return ResponseEntity.ok(ApiResponse.success("Embeddings generated and stored successfully", null));
+        EmbeddingJob job = embeddingJobService.enqueue(tenantId, fileId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponse.success("Embedding job accepted", job));
+    }
+
+    // Status and progress of an embedding job
+    @GetMapping("/embeddings/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<EmbeddingJob>> getEmbeddingJob(
+            @PathVariable Long tenantId,
+            @PathVariable Long jobId
+    ) {
+        log.info("Fetch embedding job - tenantId={}, jobId={}", tenantId, jobId);
+        EmbeddingJob job = embeddingJobService.getJob(tenantId, jobId);
+        return ResponseEntity.ok(ApiResponse.success("Embedding job fetched successfully", job));
     }
 
     //  Get stored embeddings for file
@@ -49,6 +68,34 @@ public class EmbeddingController {
         return ResponseEntity.ok(ApiResponse.success("Embeddings fetched successfully", embeddings));
     }
 
+    // Search embeddings across all files of the tenant, optionally restricted to one tag
+    @PostMapping("/embeddings/search")
+    public ResponseEntity<?> searchTenantEmbeddings(
+            @PathVariable Long tenantId,
+            @RequestBody EmbeddingSearchRequest request) {
+        log.info("Search tenant embeddings - tenantId={}, tag={}, query='{}'", tenantId, request.getTag(), request.getQuery());
+        List<Map<String, Object>> results = embeddingService.searchTenantEmbeddings(tenantId, request);
+
+        return ResponseEntity.ok(Map.of("success", true, "results", results));
+    }
+
+    // Recall and latency of the in-process engine against brute force: HNSW (tune m / efSearch)
+    // or quantized flat scans (tune quantization / rescoreMultiplier)
+    @GetMapping("/embeddings/index/recall")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> measureIndexRecall(
+            @PathVariable Long tenantId,
+            @RequestParam(defaultValue = "10") int topK,
+            @RequestParam(defaultValue = "100") int samples,
+            @RequestParam(required = false) Integer efSearch,
+            @RequestParam(required = false) VectorQuantizer.Mode quantization,
+            @RequestParam(required = false) Integer rescoreMultiplier) {
+        log.info("Measure index recall - tenantId={}, topK={}, samples={}, efSearch={}, quantization={}, rescoreMultiplier={}",
+                tenantId, topK, samples, efSearch, quantization, rescoreMultiplier);
+        Map<String, Object> report = embeddingService.measureIndexRecall(tenantId, topK, samples, efSearch,
+                quantization, rescoreMultiplier);
+        return ResponseEntity.ok(ApiResponse.success("Index recall measured", report));
+    }
+
     // Search embeddings (semantic search)
     @PostMapping("embeddings/search/{fileId}")
     public ResponseEntity<?> searchEmbeddings(
@@ -2,21 +2,27 @@ package com.example.file_repository_service.controller;
 
 import com.example.file_repository_service.dto.request.FileUpdateRequest;
 import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.exception.InvalidFileException;
+import com.example.file_repository_service.service.FileDownloadService;
 import com.example.file_repository_service.service.FileService;
 import com.example.file_repository_service.dto.request.FileSearchRequest;
 import com.example.file_repository_service.dto.response.ApiResponse;
+import com.example.file_repository_service.dto.response.CursorPageResponse;
+import com.example.file_repository_service.dto.response.PageResponse;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.List;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 
@@ -26,9 +32,11 @@ import org.springframework.http.MediaType;
 public class FileController {
 
     private final FileService fileService;
+    private final FileDownloadService fileDownloadService;
 
-    public FileController(FileService fileService) {
+    public FileController(FileService fileService, FileDownloadService fileDownloadService) {
         this.fileService = fileService;
+        this.fileDownloadService = fileDownloadService;
     }
 
     @PostMapping("/upload")
@@ -43,7 +51,35 @@ public class FileController {
         FileEntity savedFile = fileService.uploadFile(tenantId, tenantCode, file, tag);
         log.info("File uploaded successfully - fileId={}, tenantId={}", savedFile.getId(), tenantId);
 
+        return ResponseEntity.status(HttpStatus.CREATED).body(toUploadResponse(savedFile));
+    }
+
+    // The request body is the file itself (any content type except forms), read once straight to storage
+    @PostMapping("/upload/stream")
+    public ResponseEntity<Map<String, Object>> uploadFileStream(
+            @PathVariable("tenantId") Long tenantId,
+            @RequestParam("fileName") String fileName,
+            @RequestParam(value = "tag", required = false) String tag,
+            HttpServletRequest request
+    ) throws IOException {
+
+        String contentType = request.getContentType();
+        if (contentType != null && (contentType.startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)
+                || contentType.startsWith(MediaType.APPLICATION_FORM_URLENCODED_VALUE))) {
+            throw new InvalidFileException("Send the file as the raw request body, e.g. application/octet-stream");
+        }
+
+        log.info("Streaming upload request received - tenantId={}, fileName={}, contentLength={}, tag={}",
+                tenantId, fileName, request.getContentLengthLong(), tag);
+        String tenantCode = "TENANT_" + tenantId;  // temporary
+        FileEntity savedFile = fileService.uploadStream(tenantId, tenantCode, request.getInputStream(), fileName,
+                request.getContentLengthLong(), tag);
+        log.info("File uploaded successfully - fileId={}, tenantId={}", savedFile.getId(), tenantId);
 
+        return ResponseEntity.status(HttpStatus.CREATED).body(toUploadResponse(savedFile));
+    }
+
+    private Map<String, Object> toUploadResponse(FileEntity savedFile) {
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
 
@@ -52,22 +88,22 @@ public class FileController {
         fileData.put("fileName", savedFile.getFileName());
         fileData.put("mediaType", savedFile.getMediaType());
         fileData.put("fileSizeBytes", savedFile.getFileSizeBytes());
+        fileData.put("contentSha256", savedFile.getContentSha256());
         fileData.put("tag", savedFile.getTag());
         fileData.put("storagePath", savedFile.getFilePath());
         fileData.put("createdAt", savedFile.getCreatedAt());
 
         response.put("file", fileData);
-
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        return response;
     }
 
     @PostMapping("/files/search")
-    public ResponseEntity<ApiResponse<List<FileEntity>>> searchFiles(
+    public ResponseEntity<ApiResponse<PageResponse<FileEntity>>> searchFiles(
             @PathVariable("tenantId") Long tenantId,
             @RequestBody FileSearchRequest request) {
 
-        List<FileEntity> results = fileService.searchFiles(tenantId, request);
-        return ResponseEntity.ok(ApiResponse.success("Files fetched successfully", results));
+        Slice<FileEntity> results = fileService.searchFiles(tenantId, request);
+        return ResponseEntity.ok(ApiResponse.success("Files fetched successfully", PageResponse.of(results)));
     }
 
     @PostMapping("/files/{fileId}")
@@ -106,29 +142,41 @@ public class FileController {
 
 
     @GetMapping("/files")
-    public ResponseEntity<ApiResponse<List<FileEntity>>> getAllFilesByTenant(
-            @PathVariable("tenantId") Long tenantId) {
-
-        List<FileEntity> files = fileService.getAllFilesByTenant(tenantId);
+    public ResponseEntity<?> getAllFilesByTenant(
+            @PathVariable("tenantId") Long tenantId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+
+        if (accept != null && accept.contains(MediaType.APPLICATION_NDJSON_VALUE)) {
+            log.info("Streaming file export - tenantId={}", tenantId);
+            StreamingResponseBody body = out -> fileService.exportFilesByTenant(tenantId, out);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(body);
+        }
+
+        CursorPageResponse<FileEntity> files = fileService.listFilesByTenant(tenantId, cursor, limit);
         return ResponseEntity.ok(ApiResponse.success("Files fetched successfully", files));
     }
 
 
+    // Supports Range / If-Range; single bodies are sent with the connector's sendfile where available.
+    // If-None-Match / If-Modified-Since are answered with 304 before storage is touched.
     @GetMapping("/download/{fileId}")
-    public ResponseEntity<Resource> downloadFile(
+    public void downloadFile(
             @PathVariable("tenantId") Long tenantId,
             @PathVariable("fileId") String fileId,
-            @RequestParam(value = "inline", defaultValue = "false") boolean inline
-    ) {
+            @RequestParam(value = "inline", defaultValue = "false") boolean inline,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
         FileEntity fileEntity = fileService.getFileById(tenantId, fileId);
-        Resource resource = fileService.getFileAsResource(fileEntity);
+        if (fileDownloadService.checkNotModified(fileEntity, request, response)) {
+            return;
+        }
         String mimeType = fileService.getMediaType(fileEntity);
 
-        String contentDisposition = (inline ? "inline" : "attachment") + "; filename=\"" + fileEntity.getFileName() + "\"";
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(mimeType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
-                .body(resource);
+        fileDownloadService.serve(fileEntity, mimeType, inline, request, response);
     }
 }
\ No newline at end of file
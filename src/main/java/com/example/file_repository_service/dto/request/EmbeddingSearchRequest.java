@@ -8,4 +8,8 @@ import lombok.Setter;
 @Setter
 public class EmbeddingSearchRequest {
     private String query;
+
+    // tenant wide search only
+    private String tag;
+    private Integer topK;
 }
@@ -2,6 +2,8 @@ package com.example.file_repository_service.dto.request;
 
 import lombok.Data;
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 
 @Data
 public class FileSearchRequest {
@@ -14,4 +16,16 @@ public class FileSearchRequest {
 
     private LocalDate startDate;
     private LocalDate endDate;
-}
\ No newline at end of file
+
+    // metadata filters, all of them have to match
+    private Map<String, Object> metadataEquals;   // top level key equals value
+    private List<String> metadataKeys;            // top level key exists
+    private Map<String, Object> metadataContains; // arbitrary JSON the metadata must contain (@>)
+
+    // paging - page is zero based, sortBy is one of fileName, fileSizeBytes, createdAt, modifiedAt
+    // or relevance (fuzzy fileName match ranked by trigram word similarity)
+    private Integer page;
+    private Integer size;
+    private String sortBy;
+    private String sortDirection;
+}
@@ -1,5 +1,6 @@
 package com.example.file_repository_service.dto.request;
 
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
@@ -18,4 +19,9 @@ public class TenantConfigRequest {
     private List<String> forbiddenExtensions;
     private List<String> allowedMimeTypes;
     private List<String> forbiddenMimeTypes;
+
+    // output size requested from the embedding model, defaults to 1536; never below the 256 value search prefix
+    @Min(value = 256, message = "embeddingDimensions must be at least 256")
+    @Max(value = 3072, message = "embeddingDimensions must be at most 3072")
+    private Integer embeddingDimensions;
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.example.file_repository_service.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Type;
 
 import java.time.OffsetDateTime;
 
@@ -13,7 +14,6 @@ import java.time.OffsetDateTime;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-// The following line is removed: @TypeDef(name = "pgvector", typeClass = PgVectorType.class)
 public class Embedding {
 
     @EmbeddedId
@@ -22,13 +22,31 @@ public class Embedding {
     @Column(name = "ocr", columnDefinition = "TEXT")
     private String ocr;
 
-    // Store as JSON string to avoid pgvector driver issues
-    @Column(name = "embeddings", columnDefinition = "TEXT")
-    private String embeddings;
+    // pgvector column, see PgVectorType
+    @Type(PgVectorType.class)
+    @Column(name = "embeddings", columnDefinition = "vector")
+    private float[] embeddings;
+
+    // first 256 values of the vector, normalized; candidate retrieval runs on this column alone
+    @Type(PgVectorType.class)
+    @Column(name = "embedding_prefix", columnDefinition = "vector(256)")
+    private float[] embeddingPrefix;
+
+    // SHA-256 of the normalized page text (TextHasher) and the model / size it was embedded with;
+    // a re-run skips pages where both still match
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "model_version", length = 120)
+    private String modelVersion;
 
     @Column(name = "created_at")
     private OffsetDateTime createdAt;
 
+    // set on every write, in-process vector indexes sync on it
+    @Column(name = "modified_at")
+    private OffsetDateTime modifiedAt;
+
     @PrePersist
     protected void onCreate() {
         this.createdAt = OffsetDateTime.now();
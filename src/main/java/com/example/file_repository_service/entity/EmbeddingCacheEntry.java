@@ -0,0 +1,26 @@
+package com.example.file_repository_service.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+
+@Entity
+@Table(name = "cf_filerepo_embedding_cache")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingCacheEntry {
+
+    @EmbeddedId
+    private EmbeddingCacheKey id;
+
+    // raw model output, little-endian float32 (EmbeddingCodec)
+    @Column(name = "embedding", nullable = false)
+    private byte[] embedding;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+}
@@ -0,0 +1,49 @@
+package com.example.file_repository_service.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import java.io.Serializable;
+import java.util.Objects;
+
+@Embeddable
+public class EmbeddingCacheKey implements Serializable {
+
+    @Column(name = "model", length = 100)
+    private String model;
+
+    @Column(name = "dimensions", nullable = false)
+    private Integer dimensions;
+
+    // SHA-256 of the normalized text, see TextHasher
+    @Column(name = "text_sha256", length = 64)
+    private String textSha256;
+
+    public EmbeddingCacheKey() {}
+
+    public EmbeddingCacheKey(String model, Integer dimensions, String textSha256) {
+        this.model = model;
+        this.dimensions = dimensions;
+        this.textSha256 = textSha256;
+    }
+
+    public String getModel() { return model; }
+    public Integer getDimensions() { return dimensions; }
+    public String getTextSha256() { return textSha256; }
+
+    public void setModel(String model) { this.model = model; }
+    public void setDimensions(Integer dimensions) { this.dimensions = dimensions; }
+    public void setTextSha256(String textSha256) { this.textSha256 = textSha256; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EmbeddingCacheKey that)) return false;
+        return Objects.equals(model, that.model) && Objects.equals(dimensions, that.dimensions)
+                && Objects.equals(textSha256, that.textSha256);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(model, dimensions, textSha256);
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.file_repository_service.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+
+@Entity
+@Table(name = "cf_filerepo_blob")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileBlob {
+
+    @EmbeddedId
+    private FileBlobKey id;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+
+    // file rows pointing at this blob; the stored file is deleted with the last one
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+}
@@ -0,0 +1,42 @@
+package com.example.file_repository_service.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import java.io.Serializable;
+import java.util.Objects;
+
+@Embeddable
+public class FileBlobKey implements Serializable {
+
+    @Column(name = "sha256", length = 64)
+    private String sha256;
+
+    // tenant code, or StorageService.GLOBAL_BLOB_SCOPE
+    @Column(name = "scope", length = 64)
+    private String scope;
+
+    public FileBlobKey() {}
+
+    public FileBlobKey(String sha256, String scope) {
+        this.sha256 = sha256;
+        this.scope = scope;
+    }
+
+    public String getSha256() { return sha256; }
+    public String getScope() { return scope; }
+
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+    public void setScope(String scope) { this.scope = scope; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileBlobKey that)) return false;
+        return Objects.equals(sha256, that.sha256) && Objects.equals(scope, that.scope);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sha256, scope);
+    }
+}
@@ -35,6 +35,14 @@ public class FileEntity {
     @Column(name = "file_size_bytes")
     private Long fileSizeBytes;
 
+    // hex SHA-256 of the stored bytes, computed while the upload is written
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256;
+
+    // set when filePath is a shared content-addressed blob (see BlobStoreService), null for a file of its own
+    @Column(name = "blob_scope", length = 64)
+    private String blobScope;
+
     @Column(name = "tag", length = 64)
     private String tag;
 
@@ -0,0 +1,11 @@
+package com.example.file_repository_service.exception;
+
+/**
+ * Thrown to a worker whose embedding job was requeued or finished by another node meanwhile; it has to stop
+ * without writing the job's outcome.
+ */
+public class JobLeaseLostException extends RuntimeException {
+    public JobLeaseLostException(String message) {
+        super(message);
+    }
+}
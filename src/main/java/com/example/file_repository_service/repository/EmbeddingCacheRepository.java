@@ -0,0 +1,24 @@
+package com.example.file_repository_service.repository;
+
+import com.example.file_repository_service.entity.EmbeddingCacheEntry;
+import com.example.file_repository_service.entity.EmbeddingCacheKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheEntry, EmbeddingCacheKey> {
+
+    // Two nodes embedding the same text race to store it, the first one wins and the other insert is a no-op
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO cf_filerepo_embedding_cache (model, dimensions, text_sha256, embedding, created_at) " +
+            "VALUES (:model, :dimensions, :textSha256, :embedding, now()) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("model") String model,
+                       @Param("dimensions") int dimensions,
+                       @Param("textSha256") String textSha256,
+                       @Param("embedding") byte[] embedding);
+}
@@ -0,0 +1,62 @@
+package com.example.file_repository_service.repository;
+
+import com.example.file_repository_service.entity.EmbeddingJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+@Repository
+public interface EmbeddingJobRepository extends JpaRepository<EmbeddingJob, Long> {
+
+    // Oldest due job; rows locked by other nodes are skipped instead of waited on
+    @Query(value = "SELECT * FROM cf_filerepo_embedding_job " +
+            "WHERE status = 'QUEUED' AND next_attempt_at <= now() " +
+            "ORDER BY next_attempt_at, id LIMIT 1 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<EmbeddingJob> findNextDueForUpdate();
+
+    @Query("SELECT j FROM EmbeddingJob j WHERE j.fileId = :fileId AND j.status IN ('QUEUED', 'RUNNING')")
+    Optional<EmbeddingJob> findActiveByFileId(@Param("fileId") String fileId);
+
+    // Loses against a pending job of the same file (uq_cf_filerepo_embedding_job_active) instead of failing
+    @Modifying
+    @Query(value = "INSERT INTO cf_filerepo_embedding_job (tenant_id, file_id, status, attempts, max_attempts, " +
+            "pages_done, next_attempt_at, created_at, modified_at) " +
+            "VALUES (:tenantId, :fileId, 'QUEUED', 0, :maxAttempts, 0, now(), now(), now()) " +
+            "ON CONFLICT (file_id) WHERE status IN ('QUEUED', 'RUNNING') DO NOTHING", nativeQuery = true)
+    int insertIfNoneActive(@Param("tenantId") Long tenantId,
+                           @Param("fileId") String fileId,
+                           @Param("maxAttempts") int maxAttempts);
+
+    // The job as long as this node still holds its lease; locked until the caller's transaction ends
+    @Query(value = "SELECT * FROM cf_filerepo_embedding_job " +
+            "WHERE id = :id AND locked_by = :node AND status = 'RUNNING' FOR UPDATE", nativeQuery = true)
+    Optional<EmbeddingJob> findLeasedForUpdate(@Param("id") Long id, @Param("node") String node);
+
+    @Modifying
+    @Query(value = "UPDATE cf_filerepo_embedding_job SET pages_done = :pagesDone, pages_total = :pagesTotal, " +
+            "locked_at = now(), modified_at = now() " +
+            "WHERE id = :id AND locked_by = :node AND status = 'RUNNING'", nativeQuery = true)
+    int updateProgress(@Param("id") Long id,
+                       @Param("node") String node,
+                       @Param("pagesDone") int pagesDone,
+                       @Param("pagesTotal") int pagesTotal);
+
+    // Jobs whose node stopped refreshing its lease (crash, kill -9) go back to the queue while attempts are left
+    @Modifying
+    @Query(value = "UPDATE cf_filerepo_embedding_job SET status = 'QUEUED', locked_by = NULL, locked_at = NULL, " +
+            "next_attempt_at = now(), modified_at = now() " +
+            "WHERE status = 'RUNNING' AND locked_at < :staleBefore AND attempts < max_attempts", nativeQuery = true)
+    int requeueStale(@Param("staleBefore") OffsetDateTime staleBefore);
+
+    // ... and fail for good once they are used up, a job that keeps killing its node must not loop forever
+    @Modifying
+    @Query(value = "UPDATE cf_filerepo_embedding_job SET status = 'FAILED', locked_by = NULL, locked_at = NULL, " +
+            "last_error = 'Lease expired on the last attempt', modified_at = now() " +
+            "WHERE status = 'RUNNING' AND locked_at < :staleBefore AND attempts >= max_attempts", nativeQuery = true)
+    int failStale(@Param("staleBefore") OffsetDateTime staleBefore);
+}
@@ -0,0 +1,12 @@
+package com.example.file_repository_service.repository;
+
+/**
+ * Projection returned by the pgvector similarity queries.
+ */
+public interface EmbeddingMatch {
+    Integer getPageId();
+
+    Double getSimilarity();
+
+    String getTextPreview();
+}
@@ -0,0 +1,14 @@
+package com.example.file_repository_service.repository;
+
+/**
+ * Display fields of a page matched by the in-process index.
+ */
+public interface EmbeddingPreview {
+    String getFileId();
+
+    String getFileName();
+
+    Integer getPageId();
+
+    String getTextPreview();
+}
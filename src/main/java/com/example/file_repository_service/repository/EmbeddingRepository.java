@@ -2,12 +2,20 @@ package com.example.file_repository_service.repository;
 
 import com.example.file_repository_service.entity.Embedding;
 import com.example.file_repository_service.entity.EmbeddingId;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface EmbeddingRepository extends JpaRepository<Embedding, EmbeddingId>
@@ -21,6 +29,98 @@ public interface EmbeddingRepository extends JpaRepository<Embedding, EmbeddingI
     @Query("SELECT e FROM Embedding e WHERE e.id.fileId = :fileId AND e.id.pageId = :pageId")
     Embedding findByFileIdAndPageId(@Param("fileId") String fileId, @Param("pageId") Integer pageId);
     
+    // Top-k pages of a file in two stages: the 256 value prefix shortlists :candidates pages, the full vectors
+    // rerank them. Pages embedded at another size than the query are ranked by their prefix alone.
+    // The file's pages are materialized first so the planner cannot take the HNSW index on embedding_prefix
+    // and post-filter it, which returns few or no rows for a file outside the global nearest neighbours.
+    @Query(value = "WITH pages AS MATERIALIZED (" +
+            "SELECT e.page_id, e.embeddings, e.embedding_prefix, e.ocr FROM cf_filerepo_embeddings e " +
+            "WHERE e.file_id = :fileId), " +
+            "shortlist AS (" +
+            "SELECT p.page_id, p.embeddings, p.embedding_prefix, p.ocr FROM pages p " +
+            "ORDER BY p.embedding_prefix <=> cast(:prefix AS vector) LIMIT :candidates) " +
+            "SELECT s.page_id AS \"pageId\", " +
+            "1 - (CASE WHEN vector_dims(s.embeddings) = vector_dims(cast(:query AS vector)) " +
+            "THEN s.embeddings <=> cast(:query AS vector) " +
+            "ELSE s.embedding_prefix <=> cast(:prefix AS vector) END) AS \"similarity\", " +
+            "left(s.ocr, 200) AS \"textPreview\" " +
+            "FROM shortlist s ORDER BY \"similarity\" DESC LIMIT :limit", nativeQuery = true)
+    List<EmbeddingMatch> searchByFileId(@Param("fileId") String fileId,
+                                        @Param("query") String query,
+                                        @Param("prefix") String prefix,
+                                        @Param("candidates") int candidates,
+                                        @Param("limit") int limit);
+
+    // Global top-k over all pages of a tenant (optionally one tag). The candidate files are materialized
+    // first, so filtering happens before any distance is computed; the prefix then shortlists :candidates
+    // pages with a bounded heap over 256 values each, and only those are reranked with the full vectors.
+    @Query(value = "WITH candidates AS MATERIALIZED (" +
+            "SELECT f.id, f.file_name FROM cf_filerepo_file f WHERE f.tenant_id = :tenantId " +
+            "AND (cast(:tag AS varchar) IS NULL OR f.tag = cast(:tag AS varchar))), " +
+            "shortlist AS (" +
+            "SELECT e.file_id, c.file_name, e.page_id, e.embeddings, e.embedding_prefix, e.ocr " +
+            "FROM cf_filerepo_embeddings e JOIN candidates c ON c.id = e.file_id " +
+            "ORDER BY e.embedding_prefix <=> cast(:prefix AS vector) LIMIT :candidates) " +
+            "SELECT s.file_id AS \"fileId\", s.file_name AS \"fileName\", s.page_id AS \"pageId\", " +
+            "1 - (CASE WHEN vector_dims(s.embeddings) = vector_dims(cast(:query AS vector)) " +
+            "THEN s.embeddings <=> cast(:query AS vector) " +
+            "ELSE s.embedding_prefix <=> cast(:prefix AS vector) END) AS \"similarity\", " +
+            "left(s.ocr, 200) AS \"textPreview\" " +
+            "FROM shortlist s ORDER BY \"similarity\" DESC LIMIT :limit", nativeQuery = true)
+    List<TenantEmbeddingMatch> searchByTenantId(@Param("tenantId") Long tenantId,
+                                                @Param("tag") String tag,
+                                                @Param("query") String query,
+                                                @Param("prefix") String prefix,
+                                                @Param("candidates") int candidates,
+                                                @Param("limit") int limit);
+
+    // Every page vector of a tenant, read once to build the in-process index; must be consumed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT e.id.fileId AS fileId, e.id.pageId AS pageId, e.embeddings AS embeddings, " +
+            "e.modifiedAt AS modifiedAt " +
+            "FROM Embedding e, FileEntity f WHERE f.id = e.id.fileId AND f.tenantId = :tenantId")
+    Stream<PageVector> streamVectorsByTenantId(@Param("tenantId") Long tenantId);
+
+    // Page vectors of a tenant written after a watermark, how in-process indexes pick up other nodes' writes
+    @Query("SELECT e.id.fileId AS fileId, e.id.pageId AS pageId, e.embeddings AS embeddings, " +
+            "e.modifiedAt AS modifiedAt " +
+            "FROM Embedding e, FileEntity f WHERE f.id = e.id.fileId AND f.tenantId = :tenantId " +
+            "AND e.modifiedAt > :since")
+    List<PageVector> findVectorsModifiedAfter(@Param("tenantId") Long tenantId,
+                                              @Param("since") OffsetDateTime since);
+
+    // Pages of a tenant embedded at the given size, the ones an in-process index of that size holds
+    @Query(value = "SELECT count(*) FROM cf_filerepo_embeddings e JOIN cf_filerepo_file f ON f.id = e.file_id " +
+            "WHERE f.tenant_id = :tenantId AND vector_dims(e.embeddings) = :dimensions", nativeQuery = true)
+    long countByTenantIdAndDimensions(@Param("tenantId") Long tenantId, @Param("dimensions") int dimensions);
+
+    // Display fields for index hits; the file x page cross product is a superset, callers pick their pairs
+    @Query("SELECT e.id.fileId AS fileId, f.fileName AS fileName, e.id.pageId AS pageId, " +
+            "substring(e.ocr, 1, 200) AS textPreview " +
+            "FROM Embedding e, FileEntity f WHERE f.id = e.id.fileId AND f.tenantId = :tenantId " +
+            "AND e.id.fileId IN :fileIds AND e.id.pageId IN :pageIds")
+    List<EmbeddingPreview> findPreviews(@Param("tenantId") Long tenantId,
+                                        @Param("fileIds") Collection<String> fileIds,
+                                        @Param("pageIds") Collection<Integer> pageIds);
+
+    @Query("SELECT e.id.pageId AS pageId, e.contentHash AS contentHash, e.modelVersion AS modelVersion " +
+            "FROM Embedding e WHERE e.id.fileId = :fileId")
+    List<PageFingerprint> findFingerprintsByFileId(@Param("fileId") String fileId);
+
+    // Pages that no longer have text, or no longer exist, after a re-run
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Embedding e WHERE e.id.fileId = :fileId AND e.id.pageId NOT IN :pageIds")
+    int deleteByFileIdAndPageIdNotIn(@Param("fileId") String fileId, @Param("pageIds") Collection<Integer> pageIds);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Embedding e WHERE e.id.fileId = :fileId")
+    int deleteByFileId(@Param("fileId") String fileId);
+
     // Debug: Get all embeddings to see what's in the database
     @Query("SELECT e FROM Embedding e")
     List<Embedding> findAllEmbeddings();
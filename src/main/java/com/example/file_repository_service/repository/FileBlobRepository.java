@@ -0,0 +1,35 @@
+package com.example.file_repository_service.repository;
+
+import com.example.file_repository_service.entity.FileBlob;
+import com.example.file_repository_service.entity.FileBlobKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, FileBlobKey> {
+
+    // First reference creates the row, later ones count up; waits on a concurrent release of the same row
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO cf_filerepo_blob (sha256, scope, size_bytes, ref_count, created_at) " +
+            "VALUES (:sha256, :scope, :sizeBytes, 1, now()) " +
+            "ON CONFLICT (sha256, scope) DO UPDATE SET ref_count = cf_filerepo_blob.ref_count + 1", nativeQuery = true)
+    int acquire(@Param("sha256") String sha256, @Param("scope") String scope, @Param("sizeBytes") long sizeBytes);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE cf_filerepo_blob SET ref_count = ref_count - 1 " +
+            "WHERE sha256 = :sha256 AND scope = :scope", nativeQuery = true)
+    int release(@Param("sha256") String sha256, @Param("scope") String scope);
+
+    // Run after the releasing transaction committed; keeps the row lock until the blob file is deleted
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM cf_filerepo_blob WHERE sha256 = :sha256 AND scope = :scope AND ref_count <= 0",
+            nativeQuery = true)
+    int deleteUnreferenced(@Param("sha256") String sha256, @Param("scope") String scope);
+}
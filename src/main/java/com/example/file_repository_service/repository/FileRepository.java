@@ -1,11 +1,76 @@
 package com.example.file_repository_service.repository;
 
 import com.example.file_repository_service.entity.FileEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface FileRepository extends JpaRepository<FileEntity, String> {
+public interface FileRepository extends JpaRepository<FileEntity, String>, JpaSpecificationExecutor<FileEntity> {
     List<FileEntity> findByTenantId(Long tenantId);
-}
\ No newline at end of file
+
+    // Keyset pagination on (created_at, id) - served by idx_cf_filerepo_file_tenant_created_id
+    @Query(value = "SELECT * FROM cf_filerepo_file WHERE tenant_id = :tenantId " +
+            "ORDER BY created_at, id LIMIT :limit", nativeQuery = true)
+    List<FileEntity> findFirstPageByTenantId(@Param("tenantId") Long tenantId, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM cf_filerepo_file WHERE tenant_id = :tenantId " +
+            "AND (created_at, id) > (:createdAt, :id) " +
+            "ORDER BY created_at, id LIMIT :limit", nativeQuery = true)
+    List<FileEntity> findPageByTenantIdAfter(@Param("tenantId") Long tenantId,
+                                             @Param("createdAt") OffsetDateTime createdAt,
+                                             @Param("id") String id,
+                                             @Param("limit") int limit);
+
+    // Forward-only cursor for exports, must be consumed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f FROM FileEntity f WHERE f.tenantId = :tenantId ORDER BY f.createdAt, f.id")
+    Stream<FileEntity> streamByTenantId(@Param("tenantId") Long tenantId);
+
+    // Row locked until the caller commits: the storage rebalancer and the blob migration only move a row whose
+    // path they read, so their conditional updates wait and then find it gone instead of moving it from under us
+    @Query(value = "SELECT * FROM cf_filerepo_file WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<FileEntity> findByIdForUpdate(@Param("id") String id);
+
+    // Keyset over every tenant's rows by primary key, for maintenance passes
+    @Query(value = "SELECT * FROM cf_filerepo_file WHERE id > :afterId ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<FileEntity> findBatchAfterId(@Param("afterId") String afterId, @Param("limit") int limit);
+
+    // Leaves modified_at alone, the stored bytes (and so ETag / Last-Modified) did not change
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE cf_filerepo_file SET media_type = :mediaType WHERE id = :id", nativeQuery = true)
+    int updateMediaType(@Param("id") String id, @Param("mediaType") String mediaType);
+
+    // Conditional on the path read before the move, a row changed in between is left alone
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE cf_filerepo_file SET file_path = :newPath WHERE id = :id AND file_path = :oldPath",
+            nativeQuery = true)
+    int updateFilePath(@Param("id") String id, @Param("oldPath") String oldPath, @Param("newPath") String newPath);
+
+    // Only rows still stored at their own path; same bytes, so modified_at (Last-Modified) is left alone
+    @Modifying
+    @Query(value = "UPDATE cf_filerepo_file SET file_path = :blobPath, blob_scope = :scope, content_sha256 = :sha256 " +
+            "WHERE id = :id AND file_path = :filePath AND blob_scope IS NULL", nativeQuery = true)
+    int moveToBlob(@Param("id") String id,
+                   @Param("filePath") String filePath,
+                   @Param("blobPath") String blobPath,
+                   @Param("scope") String scope,
+                   @Param("sha256") String sha256);
+}
@@ -0,0 +1,111 @@
+package com.example.file_repository_service.repository;
+
+import com.example.file_repository_service.dto.request.FileSearchRequest;
+import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.exception.InvalidFileException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the database side filters for {@link FileSearchRequest}.
+ * Every predicate is scoped to the tenant first so the (tenant_id, ...) indexes can be used.
+ * Name and tag filters are rendered as ILIKE so the pg_trgm GIN indexes can serve them,
+ * metadata filters as jsonb operators served by the jsonb_path_ops GIN index.
+ */
+public final class FileSpecifications {
+
+    // sortBy value that ranks fuzzy file name matches by trigram word similarity
+    public static final String RELEVANCE_SORT = "relevance";
+
+    private static final char LIKE_ESCAPE = '\\';
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private FileSpecifications() {
+    }
+
+    public static Specification<FileEntity> forSearch(Long tenantId, FileSearchRequest req) {
+        return (root, query, criteriaBuilder) -> {
+            HibernateCriteriaBuilder cb = (HibernateCriteriaBuilder) criteriaBuilder;
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.equal(root.get("tenantId"), tenantId));
+
+            if (req.getFileName() != null) {
+                Expression<String> fileName = root.get("fileName");
+                if (RELEVANCE_SORT.equals(req.getSortBy())) {
+                    // fuzzy match on the term as a word of the name (tolerates typos), best matches first; whole-string
+                    // similarity would drop a short term in a long name that ILIKE finds
+                    predicates.add(cb.isTrue(cb.function("trgm_word_match", Boolean.class, fileName, cb.literal(req.getFileName()))));
+                    query.orderBy(
+                            cb.desc(cb.function("word_similarity", Double.class, cb.literal(req.getFileName()), fileName)),
+                            cb.asc(root.get("id")));
+                } else {
+                    predicates.add(cb.ilike(fileName, containsPattern(req.getFileName()), LIKE_ESCAPE));
+                }
+            }
+            if (req.getTag() != null) {
+                predicates.add(cb.ilike(root.get("tag"), containsPattern(req.getTag()), LIKE_ESCAPE));
+            }
+            if (req.getMediaType() != null) {
+                predicates.add(cb.equal(cb.lower(root.get("mediaType")), req.getMediaType().toLowerCase()));
+            }
+            if (req.getMetadataEquals() != null) {
+                req.getMetadataEquals().forEach((key, value) ->
+                        predicates.add(jsonbContains(cb, root.get("metadata"), Collections.singletonMap(key, value))));
+            }
+            if (req.getMetadataContains() != null && !req.getMetadataContains().isEmpty()) {
+                predicates.add(jsonbContains(cb, root.get("metadata"), req.getMetadataContains()));
+            }
+            if (req.getMetadataKeys() != null) {
+                for (String key : req.getMetadataKeys()) {
+                    String path = "exists($.\"" + key.replace("\\", "\\\\").replace("\"", "\\\"") + "\")";
+                    predicates.add(cb.isTrue(cb.function("jsonb_path_match", Boolean.class, root.get("metadata"), cb.literal(path))));
+                }
+            }
+            if (req.getMinSizeBytes() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("fileSizeBytes"), req.getMinSizeBytes()));
+            }
+            if (req.getMaxSizeBytes() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("fileSizeBytes"), req.getMaxSizeBytes()));
+            }
+            if (req.getStartDate() != null) {
+                OffsetDateTime from = req.getStartDate().atStartOfDay(ZoneId.systemDefault()).toOffsetDateTime();
+                predicates.add(cb.greaterThanOrEqualTo(root.get("modifiedAt"), from));
+            }
+            if (req.getEndDate() != null) {
+                // end date is inclusive, so compare against the start of the following day
+                OffsetDateTime to = req.getEndDate().plusDays(1).atStartOfDay(ZoneId.systemDefault()).toOffsetDateTime();
+                predicates.add(cb.lessThan(root.get("modifiedAt"), to));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private static Predicate jsonbContains(HibernateCriteriaBuilder cb, Expression<?> metadata, Map<String, Object> json) {
+        try {
+            String value = JSON.writeValueAsString(json);
+            return cb.isTrue(cb.function("jsonb_contains", Boolean.class, metadata, cb.literal(value)));
+        } catch (JsonProcessingException e) {
+            throw new InvalidFileException("Invalid metadata filter: " + e.getMessage());
+        }
+    }
+
+    private static String containsPattern(String value) {
+        String escaped = value
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
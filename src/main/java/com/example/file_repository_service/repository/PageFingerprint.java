@@ -0,0 +1,12 @@
+package com.example.file_repository_service.repository;
+
+/**
+ * Projection of what a stored page embedding was computed from, used to skip unchanged pages on re-runs.
+ */
+public interface PageFingerprint {
+    Integer getPageId();
+
+    String getContentHash();
+
+    String getModelVersion();
+}
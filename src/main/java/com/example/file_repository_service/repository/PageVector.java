@@ -0,0 +1,16 @@
+package com.example.file_repository_service.repository;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Projection used to load page vectors into the in-process index.
+ */
+public interface PageVector {
+    String getFileId();
+
+    Integer getPageId();
+
+    float[] getEmbeddings();
+
+    OffsetDateTime getModifiedAt();
+}
@@ -0,0 +1,10 @@
+package com.example.file_repository_service.repository;
+
+/**
+ * Projection returned by the tenant wide similarity query.
+ */
+public interface TenantEmbeddingMatch extends EmbeddingMatch {
+    String getFileId();
+
+    String getFileName();
+}
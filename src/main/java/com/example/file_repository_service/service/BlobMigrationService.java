@@ -0,0 +1,132 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.BlobMigrationProperties;
+import com.example.file_repository_service.config.StorageProperties;
+import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.repository.FileRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One-off ({@code file.repository.maintenance.blob-migration.enabled}) pass that dedupes existing storage in
+ * place: every file still stored at its own path is hashed (unless the upload already recorded its hash),
+ * hard linked into the content-addressed blob layout and its row switched over; the old path is removed
+ * once {@code old-path-grace-ms} has passed, as the storage rebalancer does. Identical files collapse onto one blob. Needs {@code file.repository.storage.content-addressed}
+ * so that new uploads keep to the same layout. Runs on its own thread after startup and can be restarted at
+ * any time, rows already migrated are skipped.
+ */
+@Log4j2
+@Component
+public class BlobMigrationService implements ApplicationRunner {
+
+    private final FileRepository fileRepository;
+    private final StorageService storageService;
+    private final BlobStoreService blobStoreService;
+    private final StorageProperties storageProperties;
+    private final BlobMigrationProperties properties;
+
+    public BlobMigrationService(FileRepository fileRepository,
+                                StorageService storageService,
+                                BlobStoreService blobStoreService,
+                                StorageProperties storageProperties,
+                                BlobMigrationProperties properties) {
+        this.fileRepository = fileRepository;
+        this.storageService = storageService;
+        this.blobStoreService = blobStoreService;
+        this.storageProperties = storageProperties;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isEnabled()) return;
+        if (!storageProperties.isContentAddressed()) {
+            log.warn("Blob migration skipped - file.repository.storage.content-addressed is off");
+            return;
+        }
+
+        Thread thread = new Thread(this::migrate, "blob-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void migrate() {
+        long start = System.nanoTime();
+        long scanned = 0;
+        long migrated = 0;
+        long missing = 0;
+        long failed = 0;
+        String afterId = "";
+        PendingFileDeletes pendingDeletes = new PendingFileDeletes(storageService, properties.getOldPathGraceMs());
+
+        log.info("Blob migration started - scope={}, batchSize={}", storageProperties.getBlobScope(), properties.getBatchSize());
+        try {
+            List<FileEntity> batch;
+            while (!(batch = fileRepository.findBatchAfterId(afterId, properties.getBatchSize())).isEmpty()) {
+                for (FileEntity file : batch) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
+                    scanned++;
+                    afterId = file.getId();
+                    if (file.getBlobScope() != null) continue;
+
+                    try {
+                        Path path = storageService.resolveFilePath(file.getFilePath());
+                        if (!Files.isReadable(path)) {
+                            log.warn("Blob migration skipped missing file - fileId={}, path={}", file.getId(), file.getFilePath());
+                            missing++;
+                            continue;
+                        }
+                        String sha256 = file.getContentSha256() != null
+                                ? file.getContentSha256() : storageService.sha256(file.getFilePath());
+                        String scope = blobStoreService.scopeFor(tenantCodeOf(file));
+
+                        if (blobStoreService.migrate(file, scope, sha256, Files.size(path))) {
+                            // the blob is a hard link (or copy) of these bytes, the row no longer points here
+                            if (Files.exists(storageService.resolveFilePath(storageService.blobPath(scope, sha256)))) {
+                                pendingDeletes.add(file.getFilePath());
+                            } else {
+                                log.warn("Blob migration kept old path, blob file missing - fileId={}, path={}",
+                                        file.getId(), file.getFilePath());
+                            }
+                            migrated++;
+                        }
+                    } catch (Exception e) {
+                        // the row still points at its own file, a later run retries it
+                        log.warn("Blob migration failed for file - fileId={}, error={}", file.getId(), e.getMessage());
+                        failed++;
+                    }
+                    pendingDeletes.deleteDue();
+                }
+                log.info("Blob migration progress - scanned={}, migrated={}, missing={}, failed={}",
+                        scanned, migrated, missing, failed);
+            }
+
+            pendingDeletes.drain();
+            log.info("Blob migration finished - scanned={}, migrated={}, missing={}, failed={}, took={} ms",
+                    scanned, migrated, missing, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // the rows already point at their blobs, the old paths left are only a leftover copy
+            log.warn("Blob migration interrupted - lastId={}, scanned={}, oldPathsLeft={}",
+                    afterId, scanned, pendingDeletes.size());
+        } catch (Exception e) {
+            log.error("Blob migration failed - lastId={}, scanned={}, error={}", afterId, scanned, e.getMessage(), e);
+        }
+    }
+
+    // files were written under {tenantCode}/..., the same code new uploads use as their blob scope
+    private static String tenantCodeOf(FileEntity file) {
+        String path = file.getFilePath().replace("\\", "/");
+        int slash = path.indexOf('/');
+        return slash > 0 ? path.substring(0, slash) : "TENANT_" + file.getTenantId();
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.StorageProperties;
+import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.exception.FileStorageException;
+import com.example.file_repository_service.repository.FileBlobRepository;
+import com.example.file_repository_service.repository.FileRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+
+/**
+ * Optional content-addressed layout ({@code file.repository.storage.content-addressed}): every distinct content
+ * is stored once under {@code _blobs/{scope}/} by its SHA-256 and file rows point at it, counted in
+ * cf_filerepo_blob. The blob file is deleted once its last reference is gone.
+ * <p>
+ * Ordering keeps the file and the count consistent without a lock of our own. References are always taken
+ * before the blob file is linked in, and linking recreates a missing file. A release only counts down; once
+ * the caller's transaction commits, a transaction of its own deletes the row if it is still unreferenced and
+ * the file while it holds that row. A concurrent upload of the same content either took its reference first
+ * (the row is kept along with the file) or waits on the row and links the file in again afterwards. A row
+ * left at zero by a failed cleanup is harmless: the next upload of that content counts it up again.
+ */
+@Log4j2
+@Service
+public class BlobStoreService {
+
+    private final StorageService storageService;
+    private final StorageProperties properties;
+    private final FileBlobRepository blobRepository;
+    private final FileRepository fileRepository;
+    private final TransactionTemplate cleanupTransaction;
+
+    public BlobStoreService(StorageService storageService,
+                            StorageProperties properties,
+                            FileBlobRepository blobRepository,
+                            FileRepository fileRepository,
+                            PlatformTransactionManager transactionManager) {
+        this.storageService = storageService;
+        this.properties = properties;
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        // runs after the caller's transaction has committed, which is still bound to the thread at that point
+        this.cleanupTransaction = new TransactionTemplate(transactionManager);
+        this.cleanupTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public String scopeFor(String tenantCode) {
+        return properties.getBlobScope() == StorageProperties.BlobScope.GLOBAL
+                ? StorageService.GLOBAL_BLOB_SCOPE : tenantCode;
+    }
+
+    /**
+     * Turns a freshly written upload into a reference to its blob; the written file is removed. Returned as is
+     * when the content-addressed layout is off.
+     */
+    public StorageService.StoredFile adopt(String tenantCode, StorageService.StoredFile written) {
+        if (!properties.isContentAddressed()) return written;
+
+        String scope = scopeFor(tenantCode);
+        String blobPath = storageService.blobPath(scope, written.sha256());
+        blobRepository.acquire(written.sha256(), scope, written.sizeBytes());
+        try {
+            storageService.link(written.relativePath(), blobPath);
+        } catch (IOException | RuntimeException e) {
+            release(scope, written.sha256());
+            storageService.deleteFile(written.relativePath());
+            throw new FileStorageException("Failed to store blob for tenant " + tenantCode, e);
+        }
+        storageService.deleteFile(written.relativePath());
+
+        log.debug("Upload stored as blob - scope={}, sha256={}, size={} bytes", scope, written.sha256(), written.sizeBytes());
+        return new StorageService.StoredFile(blobPath, written.sizeBytes(), written.sha256(), scope);
+    }
+
+    /**
+     * Drops one reference. Joins the caller's transaction; the blob row and file go once it commits, if no
+     * other reference was taken in the meantime. A rolled back caller keeps both.
+     */
+    @Transactional
+    public void release(String scope, String sha256) {
+        blobRepository.release(sha256, scope);
+        afterCommit(() -> deleteIfUnreferenced(scope, sha256));
+    }
+
+    // the stored content of a file row, whichever layout it was written with
+    @Transactional
+    public void delete(FileEntity file) {
+        if (file.getBlobScope() != null) {
+            release(file.getBlobScope(), file.getContentSha256());
+        } else {
+            String path = file.getFilePath();
+            afterCommit(() -> storageService.deleteFile(path));
+        }
+    }
+
+    @Transactional
+    public void delete(StorageService.StoredFile stored) {
+        if (stored.blobScope() != null) {
+            release(stored.blobScope(), stored.sha256());
+        } else {
+            afterCommit(() -> storageService.deleteFile(stored.relativePath()));
+        }
+    }
+
+    private void deleteIfUnreferenced(String scope, String sha256) {
+        try {
+            cleanupTransaction.executeWithoutResult(status -> {
+                // the row lock taken by the delete holds back a concurrent acquire until the file is gone
+                if (blobRepository.deleteUnreferenced(sha256, scope) > 0) {
+                    storageService.deleteFile(storageService.blobPath(scope, sha256));
+                    log.debug("Blob deleted with its last reference - scope={}, sha256={}", scope, sha256);
+                }
+            });
+        } catch (RuntimeException e) {
+            // the row stays at zero references with its file, the next upload of this content reuses both
+            log.warn("Blob cleanup failed - scope={}, sha256={}, error={}", scope, sha256, e.getMessage());
+        }
+    }
+
+    // files must outlive a rollback of the row that referred to them; without a transaction they go right away
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Moves one row stored at its own path onto the blob of its content (used by {@link BlobMigrationService}).
+     * As in {@link #adopt}, the reference is taken before the blob is hard linked in, then the row change commits
+     * with it; the old path is removed last. An interruption at any point leaves the row readable. Returns false
+     * when the row changed in the meantime.
+     */
+    @Transactional
+    public boolean migrate(FileEntity file, String scope, String sha256, long sizeBytes) throws IOException {
+        String blobPath = storageService.blobPath(scope, sha256);
+        blobRepository.acquire(sha256, scope, sizeBytes);
+        storageService.link(file.getFilePath(), blobPath);
+
+        if (fileRepository.moveToBlob(file.getId(), file.getFilePath(), blobPath, scope, sha256) == 0) {
+            // deleted or migrated concurrently: the reference taken above goes again, and with it the link just
+            // made when nothing else refers to the blob
+            release(scope, sha256);
+            return false;
+        }
+        return true;
+    }
+}
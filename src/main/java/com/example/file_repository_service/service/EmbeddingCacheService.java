@@ -0,0 +1,169 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.EmbeddingCacheProperties;
+import com.example.file_repository_service.config.GeminiProperties;
+import com.example.file_repository_service.entity.EmbeddingCacheEntry;
+import com.example.file_repository_service.entity.EmbeddingCacheKey;
+import com.example.file_repository_service.repository.EmbeddingCacheRepository;
+import com.example.file_repository_service.util.EmbeddingCodec;
+import com.example.file_repository_service.util.TextHasher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sits in front of {@link GeminiClient} for page and query embeddings. Vectors are keyed by
+ * (model, dimensions, SHA-256 of the normalized text) and looked up in two tiers: an in-memory LRU bounded
+ * by bytes, then cf_filerepo_embedding_cache. Only texts missing from both are sent to Gemini, once each.
+ */
+@Log4j2
+@Service
+public class EmbeddingCacheService {
+
+    // key strings, map node and array header of one in-memory entry, on top of the float values
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+
+    private final GeminiClient geminiClient;
+    private final EmbeddingCacheRepository cacheRepository;
+    private final EmbeddingCacheProperties properties;
+    private final String model;
+
+    // access ordered, the eldest entry is the least recently used; guarded by this
+    private final LinkedHashMap<EmbeddingCacheKey, float[]> memory = new LinkedHashMap<>(1024, 0.75f, true);
+    private long memoryBytes;
+
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+
+    public EmbeddingCacheService(GeminiClient geminiClient,
+                                 EmbeddingCacheRepository cacheRepository,
+                                 EmbeddingCacheProperties properties,
+                                 GeminiProperties geminiProperties,
+                                 MeterRegistry meterRegistry) {
+        this.geminiClient = geminiClient;
+        this.cacheRepository = cacheRepository;
+        this.properties = properties;
+        this.model = geminiProperties.getModel();
+        this.memoryHits = Counter.builder("embedding.cache.hits").tag("tier", "memory")
+                .description("Embeddings served from the in-memory cache").register(meterRegistry);
+        this.databaseHits = Counter.builder("embedding.cache.hits").tag("tier", "database")
+                .description("Embeddings served from cf_filerepo_embedding_cache").register(meterRegistry);
+        this.misses = Counter.builder("embedding.cache.misses")
+                .description("Embeddings requested from Gemini").register(meterRegistry);
+        Gauge.builder("embedding.cache.memory.bytes", this, EmbeddingCacheService::memoryBytes)
+                .description("Estimated size of the in-memory cache").register(meterRegistry);
+    }
+
+    /**
+     * Embeddings of {@code texts} at {@code dimensions}, in input order. Every returned array is a fresh copy,
+     * callers may normalize it in place.
+     */
+    public List<float[]> generateEmbeddings(List<String> texts, int dimensions) {
+        if (!properties.isEnabled()) {
+            return geminiClient.generateEmbeddings(texts, dimensions);
+        }
+
+        List<EmbeddingCacheKey> keys = new ArrayList<>(texts.size());
+        // unique keys not found yet, with the first text that produced each
+        Map<EmbeddingCacheKey, String> missing = new LinkedHashMap<>();
+        Map<EmbeddingCacheKey, float[]> found = new HashMap<>();
+        for (String text : texts) {
+            EmbeddingCacheKey key = new EmbeddingCacheKey(model, dimensions, TextHasher.sha256(text));
+            keys.add(key);
+            if (found.containsKey(key) || missing.containsKey(key)) continue;
+
+            float[] cached = getFromMemory(key);
+            if (cached != null) {
+                memoryHits.increment();
+                found.put(key, cached);
+            } else {
+                missing.put(key, text);
+            }
+        }
+
+        if (!missing.isEmpty() && properties.isPersistent()) {
+            loadFromDatabase(missing, found);
+        }
+
+        if (!missing.isEmpty()) {
+            misses.increment(missing.size());
+            List<EmbeddingCacheKey> missingKeys = new ArrayList<>(missing.keySet());
+            List<float[]> vectors = geminiClient.generateEmbeddings(new ArrayList<>(missing.values()), dimensions);
+            for (int i = 0; i < missingKeys.size(); i++) {
+                EmbeddingCacheKey key = missingKeys.get(i);
+                found.put(key, vectors.get(i));
+                putInMemory(key, vectors.get(i).clone());
+                if (properties.isPersistent()) {
+                    store(key, vectors.get(i));
+                }
+            }
+        }
+
+        List<float[]> results = new ArrayList<>(keys.size());
+        for (EmbeddingCacheKey key : keys) {
+            results.add(found.get(key).clone());
+        }
+        return results;
+    }
+
+    private void loadFromDatabase(Map<EmbeddingCacheKey, String> missing, Map<EmbeddingCacheKey, float[]> found) {
+        try {
+            for (EmbeddingCacheEntry entry : cacheRepository.findAllById(new ArrayList<>(missing.keySet()))) {
+                float[] vector = EmbeddingCodec.decode(entry.getEmbedding());
+                missing.remove(entry.getId());
+                found.put(entry.getId(), vector);
+                putInMemory(entry.getId(), vector.clone());
+                databaseHits.increment();
+            }
+        } catch (RuntimeException e) {
+            // the cache only saves calls, a database problem must not fail the embedding itself
+            log.warn("Embedding cache lookup failed, falling back to Gemini - keys={}, error={}",
+                    missing.size(), e.getMessage());
+        }
+    }
+
+    private void store(EmbeddingCacheKey key, float[] vector) {
+        try {
+            cacheRepository.insertIfAbsent(key.getModel(), key.getDimensions(), key.getTextSha256(),
+                    EmbeddingCodec.encode(vector));
+        } catch (RuntimeException e) {
+            log.warn("Failed to store embedding in cache - sha256={}, error={}", key.getTextSha256(), e.getMessage());
+        }
+    }
+
+    private synchronized float[] getFromMemory(EmbeddingCacheKey key) {
+        return memory.get(key);
+    }
+
+    private synchronized void putInMemory(EmbeddingCacheKey key, float[] vector) {
+        long size = entrySize(vector);
+        if (size > properties.getMaxMemoryBytes()) return;
+
+        float[] previous = memory.put(key, vector);
+        memoryBytes += size - (previous != null ? entrySize(previous) : 0);
+
+        Iterator<Map.Entry<EmbeddingCacheKey, float[]>> eldest = memory.entrySet().iterator();
+        while (memoryBytes > properties.getMaxMemoryBytes() && eldest.hasNext()) {
+            memoryBytes -= entrySize(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    private static long entrySize(float[] vector) {
+        return (long) vector.length * Float.BYTES + ENTRY_OVERHEAD_BYTES;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.EmbeddingJobProperties;
+import com.example.file_repository_service.entity.EmbeddingJob;
+import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.exception.InvalidFileException;
+import com.example.file_repository_service.exception.JobLeaseLostException;
+import com.example.file_repository_service.repository.EmbeddingJobRepository;
+import com.example.file_repository_service.repository.FileRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+/**
+ * Durable queue of embedding jobs backed by cf_filerepo_embedding_job.
+ * Any node can claim work, rows are handed out with SELECT ... FOR UPDATE SKIP LOCKED. Every later write is
+ * guarded by the claiming node's lease (locked_by and RUNNING), a node that lost it cannot overwrite the job.
+ */
+@Log4j2
+@Service
+public class EmbeddingJobService {
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    private final EmbeddingJobRepository jobRepository;
+    private final FileRepository fileRepository;
+    private final EmbeddingJobProperties properties;
+
+    public EmbeddingJobService(EmbeddingJobRepository jobRepository,
+                               FileRepository fileRepository,
+                               EmbeddingJobProperties properties) {
+        this.jobRepository = jobRepository;
+        this.fileRepository = fileRepository;
+        this.properties = properties;
+    }
+
+    @Transactional
+    public EmbeddingJob enqueue(Long tenantId, String fileId) {
+        FileEntity file = fileRepository.findById(fileId)
+                .orElseThrow(() -> new InvalidFileException("File not found for ID: " + fileId));
+
+        if (!file.getTenantId().equals(tenantId)) {
+            throw new InvalidFileException("File does not belong to tenant " + tenantId);
+        }
+
+        // the partial unique index decides between concurrent enqueues, the loser gets the winner's job
+        boolean queued = jobRepository.insertIfNoneActive(tenantId, fileId, properties.getMaxAttempts()) > 0;
+        EmbeddingJob job = jobRepository.findActiveByFileId(fileId)
+                .orElseThrow(() -> new IllegalStateException("Embedding job vanished right after enqueue, fileId=" + fileId));
+
+        if (queued) {
+            log.info("Embedding job queued - jobId={}, tenantId={}, fileId={}", job.getId(), tenantId, fileId);
+        } else {
+            log.info("Embedding job already pending - jobId={}, fileId={}", job.getId(), fileId);
+        }
+        return job;
+    }
+
+    public EmbeddingJob getJob(Long tenantId, Long jobId) {
+        EmbeddingJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new InvalidFileException("Embedding job not found with ID: " + jobId));
+
+        if (!job.getTenantId().equals(tenantId)) {
+            throw new InvalidFileException("Embedding job does not belong to tenant " + tenantId);
+        }
+        return job;
+    }
+
+    /**
+     * Claims the oldest due job for this node. The row lock only lives for this short transaction,
+     * afterwards the RUNNING status and lease keep other nodes away.
+     */
+    @Transactional
+    public Optional<EmbeddingJob> claimNext(String nodeId) {
+        return jobRepository.findNextDueForUpdate().map(job -> {
+            OffsetDateTime now = OffsetDateTime.now();
+            job.setStatus(EmbeddingJob.Status.RUNNING);
+            job.setAttempts(job.getAttempts() + 1);
+            job.setLockedBy(nodeId);
+            job.setLockedAt(now);
+            job.setModifiedAt(now);
+            log.info("Embedding job claimed - jobId={}, attempt={}, node={}", job.getId(), job.getAttempts(), nodeId);
+            return jobRepository.save(job);
+        });
+    }
+
+    /**
+     * Records progress and refreshes this node's lease. Throws {@link JobLeaseLostException} once the job was
+     * requeued or finished by another node, so the worker stops instead of racing the new owner.
+     */
+    @Transactional
+    public void updateProgress(Long jobId, String nodeId, int pagesDone, int totalPages) {
+        if (jobRepository.updateProgress(jobId, nodeId, pagesDone, totalPages) == 0) {
+            throw leaseLost(jobId, nodeId);
+        }
+    }
+
+    @Transactional
+    public void markCompleted(Long jobId, String nodeId) {
+        EmbeddingJob job = jobRepository.findLeasedForUpdate(jobId, nodeId)
+                .orElseThrow(() -> leaseLost(jobId, nodeId));
+
+        job.setStatus(EmbeddingJob.Status.COMPLETED);
+        job.setLastError(null);
+        job.setLockedBy(null);
+        job.setLockedAt(null);
+        job.setModifiedAt(OffsetDateTime.now());
+        jobRepository.save(job);
+        log.info("Embedding job completed - jobId={}, fileId={}", jobId, job.getFileId());
+    }
+
+    @Transactional
+    public void markFailed(Long jobId, String nodeId, String error, boolean retryable) {
+        EmbeddingJob job = jobRepository.findLeasedForUpdate(jobId, nodeId)
+                .orElseThrow(() -> leaseLost(jobId, nodeId));
+
+        OffsetDateTime now = OffsetDateTime.now();
+        job.setLastError(truncate(error));
+        job.setLockedBy(null);
+        job.setLockedAt(null);
+        job.setModifiedAt(now);
+
+        if (retryable && job.getAttempts() < job.getMaxAttempts()) {
+            long delayMs = backoffMs(job.getAttempts());
+            job.setStatus(EmbeddingJob.Status.QUEUED);
+            job.setNextAttemptAt(now.plusNanos(delayMs * 1_000_000L));
+            log.warn("Embedding job failed, retrying in {} ms - jobId={}, attempt={}/{}, error={}",
+                    delayMs, jobId, job.getAttempts(), job.getMaxAttempts(), error);
+        } else {
+            job.setStatus(EmbeddingJob.Status.FAILED);
+            log.error("Embedding job failed permanently - jobId={}, attempts={}, error={}",
+                    jobId, job.getAttempts(), error);
+        }
+        jobRepository.save(job);
+    }
+
+    @Transactional
+    public int requeueStaleJobs() {
+        OffsetDateTime staleBefore = OffsetDateTime.now().minusNanos(properties.getLeaseTimeoutMs() * 1_000_000L);
+        int failed = jobRepository.failStale(staleBefore);
+        if (failed > 0) {
+            log.error("Failed {} abandoned embedding jobs with no attempts left", failed);
+        }
+        int requeued = jobRepository.requeueStale(staleBefore);
+        if (requeued > 0) {
+            log.warn("Requeued {} abandoned embedding jobs", requeued);
+        }
+        return requeued;
+    }
+
+    private static JobLeaseLostException leaseLost(Long jobId, String nodeId) {
+        return new JobLeaseLostException("Embedding job " + jobId + " is no longer leased by " + nodeId);
+    }
+
+    private long backoffMs(int attempts) {
+        long delay = properties.getInitialBackoffMs() << Math.min(attempts - 1, 20);
+        return Math.min(delay, properties.getMaxBackoffMs());
+    }
+
+    private String truncate(String error) {
+        if (error == null) return null;
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
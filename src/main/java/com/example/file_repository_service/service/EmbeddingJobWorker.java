@@ -0,0 +1,112 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.EmbeddingJobProperties;
+import com.example.file_repository_service.entity.EmbeddingJob;
+import com.example.file_repository_service.exception.InvalidFileException;
+import com.example.file_repository_service.exception.JobLeaseLostException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls the embedding job table and runs claimed jobs on a bounded pool of worker threads.
+ */
+@Log4j2
+@Component
+public class EmbeddingJobWorker {
+
+    private final EmbeddingJobService jobService;
+    private final EmbeddingService embeddingService;
+    private final EmbeddingJobProperties properties;
+    private final ExecutorService executor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final String nodeId;
+
+    public EmbeddingJobWorker(EmbeddingJobService jobService,
+                              EmbeddingService embeddingService,
+                              EmbeddingJobProperties properties) {
+        this.jobService = jobService;
+        this.embeddingService = embeddingService;
+        this.properties = properties;
+        this.executor = Executors.newFixedThreadPool(properties.getWorkerThreads());
+        this.nodeId = resolveNodeId();
+    }
+
+    @Scheduled(fixedDelayString = "${file.repository.embedding.jobs.poll-interval-ms:2000}")
+    public void poll() {
+        if (!properties.isWorkerEnabled()) return;
+
+        try {
+            jobService.requeueStaleJobs();
+
+            while (inFlight.get() < properties.getWorkerThreads()) {
+                Optional<EmbeddingJob> claimed = jobService.claimNext(nodeId);
+                if (claimed.isEmpty()) return;
+
+                EmbeddingJob job = claimed.get();
+                inFlight.incrementAndGet();
+                executor.execute(() -> {
+                    try {
+                        run(job);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            }
+        } catch (Exception e) {
+            log.error("Embedding job polling failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void run(EmbeddingJob job) {
+        try {
+            embeddingService.generateEmbeddingsForFile(job.getTenantId(), job.getFileId(),
+                    (pagesDone, totalPages) -> jobService.updateProgress(job.getId(), nodeId, pagesDone, totalPages));
+            jobService.markCompleted(job.getId(), nodeId);
+        } catch (JobLeaseLostException e) {
+            // requeued after our lease expired, whoever holds it now reports the outcome
+            log.warn("Embedding job abandoned - jobId={}, node={}, reason={}", job.getId(), nodeId, e.getMessage());
+        } catch (InvalidFileException e) {
+            // bad input will not get better by retrying
+            markFailed(job, e.getMessage(), false);
+        } catch (Exception e) {
+            markFailed(job, e.getMessage(), true);
+        }
+    }
+
+    private void markFailed(EmbeddingJob job, String error, boolean retryable) {
+        try {
+            jobService.markFailed(job.getId(), nodeId, error, retryable);
+        } catch (JobLeaseLostException e) {
+            log.warn("Embedding job failure not recorded - jobId={}, node={}, reason={}", job.getId(), nodeId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            // unfinished jobs are picked up again once their lease expires
+            executor.shutdownNow();
+        }
+    }
+
+    private static String resolveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.file_repository_service.service;
+
+/**
+ * Receives per-page progress while embeddings of a file are generated.
+ */
+@FunctionalInterface
+public interface EmbeddingProgressListener {
+
+    EmbeddingProgressListener NONE = (pagesDone, totalPages) -> { };
+
+    void onProgress(int pagesDone, int totalPages);
+}
@@ -1,27 +1,39 @@
 package com.example.file_repository_service.service;
 
+import com.example.file_repository_service.config.GeminiProperties;
+import com.example.file_repository_service.dto.request.EmbeddingSearchRequest;
 import com.example.file_repository_service.entity.Embedding;
 import com.example.file_repository_service.entity.EmbeddingId;
 import com.example.file_repository_service.entity.FileEntity;
 import com.example.file_repository_service.exception.InvalidFileException;
+import com.example.file_repository_service.exception.JobLeaseLostException;
+import com.example.file_repository_service.repository.EmbeddingMatch;
+import com.example.file_repository_service.repository.EmbeddingPreview;
 import com.example.file_repository_service.repository.EmbeddingRepository;
 import com.example.file_repository_service.repository.FileRepository;
+import com.example.file_repository_service.repository.PageFingerprint;
+import com.example.file_repository_service.repository.TenantEmbeddingMatch;
+import com.example.file_repository_service.util.EmbeddingCodec;
+import com.example.file_repository_service.util.VectorHit;
 import com.example.file_repository_service.util.MediaTypeDetector;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
+import com.example.file_repository_service.util.TextHasher;
+import com.example.file_repository_service.util.VectorMath;
+import com.example.file_repository_service.util.VectorQuantizer;
 import org.springframework.stereotype.Service;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Map;
 import java.util.stream.Collectors;
 
 
-import java.io.File;
 import java.nio.file.Path;
 import java.util.List;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 
 @Log4j2
@@ -32,22 +44,57 @@ public class EmbeddingService {
     private final EmbeddingRepository embeddingRepository;
     private final StorageService storageService;
     private final GeminiClient geminiClient;
+    private final GeminiProperties geminiProperties;
+    private final EmbeddingCacheService embeddingCacheService;
     private final MediaTypeDetector mediaTypeDetector;
+    private final PdfTextExtractor pdfTextExtractor;
+    private final VectorIndexService vectorIndexService;
+    private final VectorSegmentService vectorSegmentService;
+    private final TenantConfigService tenantConfigService;
+
+    // must match the vector(n) definition of embedding_prefix
+    public static final int PREFIX_DIMENSIONS = 256;
+    // pages shortlisted by the prefix per requested result, before reranking with the full vectors
+    private static final int PREFIX_CANDIDATES_PER_RESULT = 10;
+    private static final int SEARCH_TOP_K = 5;
+    private static final int DEFAULT_TENANT_SEARCH_TOP_K = 10;
+    private static final int MAX_TENANT_SEARCH_TOP_K = 100;
 
     public EmbeddingService(FileRepository fileRepository,
                             EmbeddingRepository embeddingRepository,
                             StorageService storageService,
                             GeminiClient geminiClient,
-                            MediaTypeDetector mediaTypeDetector) {
+                            GeminiProperties geminiProperties,
+                            EmbeddingCacheService embeddingCacheService,
+                            MediaTypeDetector mediaTypeDetector,
+                            PdfTextExtractor pdfTextExtractor,
+                            VectorIndexService vectorIndexService,
+                            VectorSegmentService vectorSegmentService,
+                            TenantConfigService tenantConfigService) {
         this.fileRepository = fileRepository;
         this.embeddingRepository = embeddingRepository;
         this.storageService = storageService;
         this.geminiClient = geminiClient;
+        this.geminiProperties = geminiProperties;
+        this.embeddingCacheService = embeddingCacheService;
         this.mediaTypeDetector = mediaTypeDetector;
+        this.pdfTextExtractor = pdfTextExtractor;
+        this.vectorIndexService = vectorIndexService;
+        this.vectorSegmentService = vectorSegmentService;
+        this.tenantConfigService = tenantConfigService;
     }
 
-    @Transactional
     public void generateEmbeddingsForFile(Long tenantId, String fileId) {
+        generateEmbeddingsForFile(tenantId, fileId, EmbeddingProgressListener.NONE);
+    }
+
+    /**
+     * Embeds every page of a PDF. There is deliberately no surrounding transaction: each page is
+     * committed on its own, so no connection is held across the PDF parsing and Gemini round-trips,
+     * and a failed run keeps the pages it finished. A re-run only embeds pages whose text hash or
+     * model version differ from the stored row, and drops rows of pages that no longer have text.
+     */
+    public void generateEmbeddingsForFile(Long tenantId, String fileId, EmbeddingProgressListener progress) {
         log.info("Generate embeddings - tenantId={}, fileId={}", tenantId, fileId);
         FileEntity file = fileRepository.findById(fileId)
                 .orElseThrow(() -> new InvalidFileException("File not found for ID: " + fileId));
@@ -65,37 +112,67 @@ public class EmbeddingService {
                 throw new InvalidFileException("File type not supported for embeddings (only PDF files are allowed).");
             }
 
-            File pdfFile = path.toFile();
-
-            try (PDDocument document = PDDocument.load(pdfFile)) {
-                PDFTextStripper stripper = new PDFTextStripper();
-                int totalPages = document.getNumberOfPages();
+            int dimensions = tenantConfigService.getEmbeddingDimensions(tenantId);
+            String modelVersion = geminiProperties.getModel() + "/" + dimensions;
+            List<PageFingerprint> fingerprints = embeddingRepository.findFingerprintsByFileId(fileId);
+            // hashes of pages already embedded with the current model and size
+            Map<Integer, String> stored = fingerprints.stream()
+                    .filter(f -> modelVersion.equals(f.getModelVersion()) && f.getContentHash() != null)
+                    .collect(Collectors.toMap(PageFingerprint::getPageId, PageFingerprint::getContentHash));
+
+            // pages arrive as the extraction workers finish them, not necessarily in page order
+            try (PdfTextExtractor.PageStream pages = pdfTextExtractor.open(path)) {
+                int totalPages = pages.totalPages();
                 log.info("PDF loaded - pages={} for fileId={}", totalPages, fileId);
 
-                for (int i = 1; i <= totalPages; i++) {
-                    stripper.setStartPage(i);
-                    stripper.setEndPage(i);
-                    String text = stripper.getText(document).trim();
-
-                    if (text.isEmpty()) continue;
-
-                    List<Float> vector = geminiClient.generateEmbeddings(text);
-                    if (vector.size() > 1536) {
-                        vector = vector.subList(0, 1536); // truncate extra dimensions
+                // pages are embedded in chunks so one round keeps every Gemini request slot busy
+                int chunkSize = geminiClient.recommendedChunkSize();
+                List<PageText> pending = new ArrayList<>(chunkSize);
+                Set<Integer> pagesWithText = new HashSet<>();
+                int extracted = 0;
+                int skipped = 0;
+                PdfTextExtractor.ExtractedPage page;
+                while ((page = pages.next()) != null) {
+                    extracted++;
+                    String text = page.text();
+
+                    if (!text.isEmpty()) {
+                        pagesWithText.add(page.pageNumber());
+                        String contentHash = TextHasher.sha256(text);
+                        if (contentHash.equals(stored.get(page.pageNumber()))) {
+                            skipped++;
+                        } else {
+                            pending.add(new PageText(page.pageNumber(), text, contentHash));
+                        }
                     }
+                    if (pending.size() >= chunkSize || extracted == totalPages) {
+                        embedAndSave(tenantId, fileId, pending, dimensions, modelVersion);
+                        pending.clear();
+                        progress.onProgress(extracted, totalPages);
+                    } else if (extracted % chunkSize == 0) {
+                        // runs of unchanged pages still move the job forward
+                        progress.onProgress(extracted, totalPages);
+                    }
+                }
 
-                    String vectorString = vector.toString();
-                    Embedding embedding = Embedding.builder()
-                            .id(new EmbeddingId(fileId, i))
-                            .ocr(text)
-                            .embeddings(vectorString)
-                            .build();
-
-                    embeddingRepository.save(embedding);
-                    log.debug("Saved embedding - fileId={}, page={}", fileId, i);
+                int removed = pagesWithText.isEmpty()
+                        ? embeddingRepository.deleteByFileId(fileId)
+                        : embeddingRepository.deleteByFileIdAndPageIdNotIn(fileId, pagesWithText);
+                if (removed > 0) {
+                    // every page this run wrote has text, so the deleted rows are the stored pages without it
+                    Set<Integer> removedPages = fingerprints.stream()
+                            .map(PageFingerprint::getPageId)
+                            .filter(pageId -> !pagesWithText.contains(pageId))
+                            .collect(Collectors.toSet());
+                    vectorIndexService.onPagesRemoved(tenantId, fileId, removedPages);
+                    vectorSegmentService.onPagesRemoved(tenantId, fileId, removedPages);
                 }
+                log.info("Embeddings up to date - fileId={}, pages={}, embedded={}, unchanged={}, removed={}",
+                        fileId, totalPages, pagesWithText.size() - skipped, skipped, removed);
             }
 
+        } catch (InvalidFileException | JobLeaseLostException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error while generating embeddings - tenantId={}, fileId={}, error={}", tenantId, fileId, e.getMessage(), e);
             throw new RuntimeException("Error while generating embeddings: " + e.getMessage(), e);
@@ -103,6 +180,39 @@ public class EmbeddingService {
     }
 
 
+    private void embedAndSave(Long tenantId, String fileId, List<PageText> pages, int dimensions, String modelVersion) {
+        if (pages.isEmpty()) return;
+
+        // unchanged and repeated pages (cover pages, boilerplate, re-uploads) come from the cache
+        List<float[]> vectors = embeddingCacheService.generateEmbeddings(
+                pages.stream().map(PageText::text).collect(Collectors.toList()), dimensions);
+
+        for (int p = 0; p < pages.size(); p++) {
+            float[] vector = prepareVector(vectors.get(p), dimensions);
+
+            PageText page = pages.get(p);
+            Embedding embedding = Embedding.builder()
+                    .id(new EmbeddingId(fileId, page.pageNumber()))
+                    .ocr(page.text())
+                    .embeddings(vector)
+                    .embeddingPrefix(prefixOf(vector))
+                    .contentHash(page.contentHash())
+                    .modelVersion(modelVersion)
+                    .modifiedAt(OffsetDateTime.now())
+                    .build();
+
+            // committed page by page, see generateEmbeddingsForFile
+            embeddingRepository.save(embedding);
+            vectorIndexService.onPageEmbedded(tenantId, fileId, page.pageNumber(), vector);
+            vectorSegmentService.onPageEmbedded(tenantId, fileId, page.pageNumber(), vector);
+            log.debug("Saved embedding - fileId={}, page={}", fileId, page.pageNumber());
+        }
+    }
+
+    private record PageText(int pageNumber, String text, String contentHash) {
+    }
+
+
     public List<Embedding> getEmbeddingsForFile(Long tenantId, String fileId) {
         FileEntity file = fileRepository.findById(fileId)
                 .orElseThrow(() -> new InvalidFileException("File not found for ID: " + fileId));
@@ -138,45 +248,112 @@ public class EmbeddingService {
             throw new InvalidFileException("File does not belong to tenant " + tenantId);
         }
 
-        List<Float> queryVector = geminiClient.generateEmbeddings(query);
-        List<Embedding> embeddings = embeddingRepository.findByFileId(fileId);
+        // similarity is computed and ranked by pgvector, only the top rows come back
+        float[] vector = embedQuery(tenantId, query);
+        List<EmbeddingMatch> matches = embeddingRepository.searchByFileId(fileId,
+                EmbeddingCodec.toVectorLiteral(vector), EmbeddingCodec.toVectorLiteral(prefixOf(vector)),
+                SEARCH_TOP_K * PREFIX_CANDIDATES_PER_RESULT, SEARCH_TOP_K);
 
-        return embeddings.stream().map(e -> {
-                    List<Float> storedVector = parseVector(e.getEmbeddings());
-                    double similarity = cosineSimilarity(storedVector, queryVector);
+        return matches.stream().map(m -> {
+                    Map<String, Object> map = new HashMap<>();
+                    map.put("page_id", m.getPageId());
+                    map.put("similarity", m.getSimilarity());
+                    map.put("text_preview", m.getTextPreview());
+                    return map;
+                })
+                .collect(Collectors.toList());
+    }
+
+    public List<Map<String, Object>> searchTenantEmbeddings(Long tenantId, EmbeddingSearchRequest request) {
+        if (request.getQuery() == null || request.getQuery().isBlank()) {
+            throw new InvalidFileException("Search query must not be empty");
+        }
+        int topK = request.getTopK() != null
+                ? Math.min(Math.max(request.getTopK(), 1), MAX_TENANT_SEARCH_TOP_K)
+                : DEFAULT_TENANT_SEARCH_TOP_K;
+        log.info("Tenant search embeddings - tenantId={}, tag={}, topK={}", tenantId, request.getTag(), topK);
+
+        // the query is embedded once for the whole tenant
+        float[] query = embedQuery(tenantId, request.getQuery());
+
+        // the in-process engines have no notion of tags, tag scoped searches stay in SQL
+        if (request.getTag() == null) {
+            if (vectorIndexService.isEnabled()) {
+                return describeHits(tenantId, vectorIndexService.search(tenantId, query, topK));
+            }
+            if (vectorSegmentService.isEnabled()) {
+                return describeHits(tenantId, vectorSegmentService.search(tenantId, query, topK));
+            }
+        }
 
+        List<TenantEmbeddingMatch> matches = embeddingRepository.searchByTenantId(
+                tenantId, request.getTag(), EmbeddingCodec.toVectorLiteral(query),
+                EmbeddingCodec.toVectorLiteral(prefixOf(query)), topK * PREFIX_CANDIDATES_PER_RESULT, topK);
+
+        return matches.stream().map(m -> {
                     Map<String, Object> map = new HashMap<>();
-                    map.put("page_id", e.getPageId());
-                    map.put("similarity", similarity);
-                    map.put("text_preview", e.getOcr().substring(0, Math.min(200, e.getOcr().length())));
+                    map.put("file_id", m.getFileId());
+                    map.put("file_name", m.getFileName());
+                    map.put("page_id", m.getPageId());
+                    map.put("similarity", m.getSimilarity());
+                    map.put("text_preview", m.getTextPreview());
                     return map;
                 })
-                .sorted((a, b) -> Double.compare((Double) b.get("similarity"), (Double) a.get("similarity")))
-                .limit(5)
                 .collect(Collectors.toList());
     }
 
-    private List<Float> parseVector(String vectorString) {
-        vectorString = vectorString.replace("[", "").replace("]", "").trim();
-        String[] parts = vectorString.split(",");
-        ArrayList<Float> list = new ArrayList<>();
-        for (String p : parts) {
-            try {
-                list.add(Float.parseFloat(p.trim()));
-            } catch (NumberFormatException ignored) {}
+    private List<Map<String, Object>> describeHits(Long tenantId, List<VectorHit> hits) {
+        if (hits.isEmpty()) return List.of();
+
+        Map<String, EmbeddingPreview> previews = embeddingRepository.findPreviews(tenantId,
+                        hits.stream().map(VectorHit::fileId).collect(Collectors.toSet()),
+                        hits.stream().map(VectorHit::pageId).collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(p -> p.getFileId() + '#' + p.getPageId(), p -> p));
+
+        List<Map<String, Object>> results = new ArrayList<>(hits.size());
+        for (VectorHit hit : hits) {
+            EmbeddingPreview preview = previews.get(hit.fileId() + '#' + hit.pageId());
+            if (preview == null) continue; // deleted since it was indexed
+
+            Map<String, Object> map = new HashMap<>();
+            map.put("file_id", hit.fileId());
+            map.put("file_name", preview.getFileName());
+            map.put("page_id", hit.pageId());
+            map.put("similarity", hit.score());
+            map.put("text_preview", preview.getTextPreview());
+            results.add(map);
         }
-        return list;
+        return results;
     }
 
-    private double cosineSimilarity(List<Float> v1, List<Float> v2) {
-        if (v1.isEmpty() || v2.isEmpty()) return 0;
-        double dot = 0, mag1 = 0, mag2 = 0;
-        int len = Math.min(v1.size(), v2.size());
-        for (int i = 0; i < len; i++) {
-            dot += v1.get(i) * v2.get(i);
-            mag1 += v1.get(i) * v1.get(i);
-            mag2 += v2.get(i) * v2.get(i);
+    public Map<String, Object> measureIndexRecall(Long tenantId, int topK, int samples, Integer efSearch,
+                                                  VectorQuantizer.Mode quantization, Integer rescoreMultiplier) {
+        int k = Math.min(Math.max(topK, 1), MAX_TENANT_SEARCH_TOP_K);
+        int sampleCount = Math.min(Math.max(samples, 1), 1000);
+        if (vectorIndexService.isEnabled()) {
+            return vectorIndexService.measureRecall(tenantId, k, sampleCount, efSearch);
+        }
+        if (vectorSegmentService.isEnabled()) {
+            return vectorSegmentService.measureRecall(tenantId, k, sampleCount, quantization, rescoreMultiplier);
         }
-        return dot / (Math.sqrt(mag1) * Math.sqrt(mag2) + 1e-10);
+        throw new InvalidFileException("No in-process vector engine is enabled (file.repository.vector.engine)");
+    }
+
+    // queries are embedded at the tenant's size, so they compare with its pages at full length
+    private float[] embedQuery(Long tenantId, String query) {
+        int dimensions = tenantConfigService.getEmbeddingDimensions(tenantId);
+        return prepareVector(embeddingCacheService.generateEmbeddings(List.of(query), dimensions).get(0), dimensions);
+    }
+
+    private float[] prepareVector(float[] vector, int dimensions) {
+        // truncate extra dimensions, then normalize once so any later scoring is a plain dot product
+        float[] truncated = vector.length > dimensions ? Arrays.copyOf(vector, dimensions) : vector;
+        return VectorMath.normalize(truncated);
+    }
+
+    // Matryoshka embeddings front-load their information, the leading values are a usable vector on their own
+    private static float[] prefixOf(float[] vector) {
+        return VectorMath.normalize(Arrays.copyOf(vector, PREFIX_DIMENSIONS));
     }
 }
@@ -0,0 +1,241 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.DownloadProperties;
+import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.exception.FileStorageException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes stored files to the response with HTTP range support (RFC 7233): single ranges as 206 with
+ * Content-Range, several ranges as multipart/byteranges, unsatisfiable ones as 416, and If-Range falling
+ * back to the whole file when the client's copy is stale. Single bodies go through the connector's
+ * sendfile when available, otherwise (and for multipart parts) through FileChannel.transferTo.
+ * Conditional requests are answered by {@link #checkNotModified} without reading the file.
+ */
+@Log4j2
+@Service
+public class FileDownloadService {
+
+    // set by Tomcat on requests whose connector can sendfile, and read back after the servlet returns
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private final StorageService storageService;
+    private final DownloadProperties properties;
+
+    public FileDownloadService(StorageService storageService, DownloadProperties properties) {
+        this.storageService = storageService;
+        this.properties = properties;
+    }
+
+    public void serve(FileEntity file, String mediaType, boolean inline,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path path = storageService.resolveFilePath(file.getFilePath());
+        if (!Files.isReadable(path)) {
+            throw new FileStorageException("File not found or not readable: " + file.getFilePath());
+        }
+        long length = Files.size(path);
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                (inline ? "inline" : "attachment") + "; filename=\"" + file.getFileName() + "\"");
+        String etag = etag(file);
+        setCacheHeaders(file, etag, response);
+
+        List<HttpRange> ranges = requestedRanges(file, etag, request);
+        boolean head = "HEAD".equals(request.getMethod());
+
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(mediaType);
+            response.setContentLengthLong(length);
+            if (!head) writeBody(path, 0, length, request, response);
+            return;
+        }
+
+        List<long[]> satisfiable = new ArrayList<>(ranges.size());
+        long total = 0;
+        for (HttpRange range : ranges) {
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            // starts beyond the end of the file, the other ranges may still be served
+            if (start >= length || end < start) continue;
+            satisfiable.add(new long[]{start, end});
+            total += end - start + 1;
+        }
+        // overlapping ranges asking for more than the file itself are an amplification attempt
+        if (satisfiable.isEmpty() || total > length) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (satisfiable.size() == 1) {
+            long start = satisfiable.get(0)[0];
+            long end = satisfiable.get(0)[1];
+            response.setContentType(mediaType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            response.setContentLengthLong(end - start + 1);
+            if (!head) writeBody(path, start, end - start + 1, request, response);
+            return;
+        }
+
+        writeMultipart(path, length, mediaType, satisfiable, head, response);
+    }
+
+    /**
+     * Answers If-None-Match / If-Modified-Since from the stored hash and timestamp alone, before the file or
+     * its media type is looked at. Returns true when a 304 has been written and nothing else must be sent.
+     */
+    public boolean checkNotModified(FileEntity file, HttpServletRequest request, HttpServletResponse response) {
+        String etag = etag(file);
+        long lastModified = file.getModifiedAt() != null ? file.getModifiedAt().toInstant().toEpochMilli() : -1;
+
+        setCacheHeaders(file, etag, response);
+        boolean notModified = new ServletWebRequest(request, response).checkNotModified(etag, lastModified);
+        if (notModified) {
+            log.debug("Download not modified - fileId={}", file.getId());
+        }
+        return notModified;
+    }
+
+    // strong validator, the hash of the stored bytes
+    static String etag(FileEntity file) {
+        return file.getContentSha256() != null ? "\"" + file.getContentSha256() + "\"" : null;
+    }
+
+    // sent on 200, 206 and 304 alike so caches keep the same policy after revalidating
+    private void setCacheHeaders(FileEntity file, String etag, HttpServletResponse response) {
+        if (StringUtils.hasText(properties.getCacheControl())) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, properties.getCacheControl());
+        }
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+        if (file.getModifiedAt() != null) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.getModifiedAt().toInstant().toEpochMilli());
+        }
+    }
+
+    private List<HttpRange> requestedRanges(FileEntity file, String etag, HttpServletRequest request) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) return List.of();
+
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRangeMatches(ifRange, file, etag, request)) {
+            // the client's partial copy is stale, it gets the current file in full
+            return List.of();
+        }
+
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() <= properties.getMaxRanges() ? ranges : List.of();
+        } catch (IllegalArgumentException e) {
+            // a malformed Range header is ignored (RFC 7233 section 3.1)
+            log.debug("Ignoring invalid Range header - value={}, error={}", rangeHeader, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private boolean ifRangeMatches(String ifRange, FileEntity file, String etag, HttpServletRequest request) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // only a strong, identical entity tag allows a partial response
+            return etag != null && etag.equals(ifRange);
+        }
+        if (file.getModifiedAt() == null) return false;
+        try {
+            long since = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return since / 1000 == file.getModifiedAt().toEpochSecond();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void writeBody(Path path, long start, long count, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        if (properties.isSendfileEnabled() && count >= properties.getSendfileMinBytes()
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            // the connector streams the file itself once this request returns, no byte passes through the heap
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, start + count);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            transfer(channel, start, count, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    private void writeMultipart(Path path, long length, String mediaType, List<long[]> ranges, boolean head,
+                                HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + mediaType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (head) return;
+
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                out.write(partHeaders.get(i));
+                transfer(channel, ranges.get(i)[0], ranges.get(i)[1] - ranges.get(i)[0] + 1, target);
+            }
+        }
+        out.write(closing);
+    }
+
+    private static void transfer(FileChannel channel, long position, long count, WritableByteChannel target)
+            throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long sent = channel.transferTo(position, end - position, target);
+            if (sent <= 0) {
+                throw new IOException("File ended before the requested range was sent");
+            }
+            position += sent;
+        }
+    }
+}
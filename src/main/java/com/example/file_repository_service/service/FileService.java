@@ -2,24 +2,41 @@ package com.example.file_repository_service.service;
 
 import com.example.file_repository_service.dto.request.FileSearchRequest;
 import com.example.file_repository_service.dto.request.FileUpdateRequest;
+import com.example.file_repository_service.dto.response.CursorPageResponse;
 import com.example.file_repository_service.entity.FileEntity;
 import com.example.file_repository_service.entity.TenantConfig;
 import com.example.file_repository_service.exception.InvalidFileException;
 import com.example.file_repository_service.exception.TenantNotFoundException;
 import com.example.file_repository_service.repository.FileRepository;
+import com.example.file_repository_service.repository.FileSpecifications;
+import com.example.file_repository_service.util.FileCursor;
 import com.example.file_repository_service.util.FileIdGenerator;
 import com.example.file_repository_service.util.FileValidator;
-import com.example.file_repository_service.util.SimpleMultipartFile;
+import com.example.file_repository_service.util.MediaTypeDetector;
+import com.example.file_repository_service.util.ZipValidator;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.OffsetDateTime;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.springframework.core.io.Resource;
 import java.nio.file.*;
@@ -35,16 +52,42 @@ public class FileService {
     private final StorageService storageService;
     private final TenantConfigService tenantConfigService;
     private final FileValidator fileValidator;
-
+    private final MediaTypeDetector mediaTypeDetector;
+    private final ZipValidator zipValidator;
+    private final BlobStoreService blobStoreService;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final VectorIndexService vectorIndexService;
+    private final VectorSegmentService vectorSegmentService;
+
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 20;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+    private static final Set<String> SEARCH_SORT_FIELDS = Set.of("fileName", "fileSizeBytes", "createdAt", "modifiedAt");
+    private static final int MAX_LIST_PAGE_SIZE = 1000;
+    private static final int EXPORT_FLUSH_INTERVAL = 100;
 
     public FileService(FileRepository fileRepository,
                        StorageService storageService,
                        TenantConfigService tenantConfigService,
-                       FileValidator fileValidator) {
+                       FileValidator fileValidator,
+                       MediaTypeDetector mediaTypeDetector,
+                       ZipValidator zipValidator,
+                       BlobStoreService blobStoreService,
+                       ObjectMapper objectMapper,
+                       EntityManager entityManager,
+                       VectorIndexService vectorIndexService,
+                       VectorSegmentService vectorSegmentService) {
         this.fileRepository = fileRepository;
         this.storageService = storageService;
         this.tenantConfigService = tenantConfigService;
         this.fileValidator = fileValidator;
+        this.mediaTypeDetector = mediaTypeDetector;
+        this.zipValidator = zipValidator;
+        this.blobStoreService = blobStoreService;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.vectorIndexService = vectorIndexService;
+        this.vectorSegmentService = vectorSegmentService;
     }
 
 
@@ -57,11 +100,11 @@ public class FileService {
             }
 
             TenantConfig tenantConfig = tenantConfigService.getTenantConfigOrThrow(tenantId.intValue());
-            fileValidator.validateFile(file, tenantConfig);
+            String mediaType = fileValidator.validateFile(file, tenantConfig);
 
             log.info("Uploading file for tenant {}", tenantId);
 
-            return saveFileEntity(tenantId, tenantCode, file, tag);
+            return saveFileEntity(tenantId, tenantCode, file, mediaType, tag);
         } catch (Exception e) {
             log.error("Error while uploading file for tenant {}", tenantId, e);
             throw e;
@@ -70,106 +113,131 @@ public class FileService {
 
     public FileEntity uploadZipFile(Long tenantId, String tenantCode, MultipartFile file, String tag) throws IOException
     {
-        String zipId = FileIdGenerator.generate(tenantId);
-        Path extractedDir = null;
-
         TenantConfig tenantConfig = tenantConfigService.getTenantConfigOrThrow(tenantId.intValue());
-
-        Map<String, Object> config = tenantConfig.getConfig();
-        Integer maxFileSizeKBytes = (Integer) config.get("maxFileSizeKBytes");
-        long maxBytes = maxFileSizeKBytes * 1024L;
+        long maxBytes = fileValidator.maxBytes(tenantConfig);
 
         if (file.getSize() > maxBytes) {
-            throw new InvalidFileException("ZIP file exceeds maximum allowed size of " + maxFileSizeKBytes + " KB");
+            throw new InvalidFileException("ZIP file exceeds maximum allowed size of " + maxBytes / 1024 + " KB");
         }
 
+        // validated and typed in one pass off the stream, only the accepted archive itself is written
+        String mediaType;
+        try (InputStream in = file.getInputStream()) {
+            mediaType = zipValidator.validate(in, file.getSize(), tenantConfig, file.getOriginalFilename());
+        }
 
-        try {
-            extractedDir = storageService.extractZipToTemp(file, tenantCode, zipId);
+        return saveFileEntity(tenantId, tenantCode, file, mediaType, tag);
+    }
 
-            try (Stream<Path> walk = Files.walk(extractedDir)) {
-                List<Path> innerFiles = walk
-                        .filter(Files::isRegularFile)
-                        .collect(Collectors.toList());
 
-                if (innerFiles.isEmpty()) {
-                    throw new InvalidFileException("ZIP archive is empty.");
-                }
+    /**
+     * Upload from a raw request body, read exactly once: the extension and announced length are checked
+     * up front, the MIME type is sniffed from the leading bytes before anything is written, and the size
+     * limit is enforced while the rest streams to disk. Heap use does not depend on the file size.
+     */
+    public FileEntity uploadStream(Long tenantId, String tenantCode, InputStream body, String fileName,
+                                   long contentLength, String tag) throws IOException
+    {
+        if (fileName == null || fileName.isBlank()) {
+            throw new InvalidFileException("fileName is required");
+        }
+        if (fileName.toLowerCase().endsWith(".zip")) {
+            throw new InvalidFileException("ZIP archives must be uploaded through /upload");
+        }
 
-                for (Path innerFile : innerFiles) {
-                    // Convert to MultipartFile-like input
-                    byte[] bytes = Files.readAllBytes(innerFile);
-                    String fileName = innerFile.getFileName().toString();
+        TenantConfig tenantConfig = tenantConfigService.getTenantConfigOrThrow(tenantId.intValue());
+        fileValidator.validateExtension(fileName, tenantConfig);
+        if (contentLength >= 0) {
+            fileValidator.validateSize(contentLength, tenantConfig);
+        }
 
-                    SimpleMultipartFile mockFile = new SimpleMultipartFile(
-                            fileName,
-                            fileName,
-                            Files.probeContentType(innerFile),
-                            Files.readAllBytes(innerFile)
-                    );
+        String fileId = FileIdGenerator.generate(tenantId);
+        String[] detectedMimeType = new String[1];
+        StorageService.StoredFile stored = storageService.saveStream(body, tenantCode, fileId, fileName,
+                fileValidator.maxBytes(tenantConfig), head -> {
+                    detectedMimeType[0] = mediaTypeDetector.detectMimeType(head, fileName);
+                    fileValidator.validateMimeType(detectedMimeType[0], tenantConfig);
+                });
+        stored = blobStoreService.adopt(tenantCode, stored);
+        log.info("Streamed upload stored - tenantId={}, fileId={}, size={} bytes, mediaType={}",
+                tenantId, fileId, stored.sizeBytes(), detectedMimeType[0]);
+
+        return saveEntity(toEntity(tenantId, fileId, fileName, detectedMimeType[0], tag, stored), stored);
+    }
 
-                    fileValidator.validateFile(mockFile, tenantConfig);
-                }
-            }
+    // mediaType is the detected type, never the one the client announced
+    private FileEntity saveFileEntity(Long tenantId, String tenantCode, MultipartFile file, String mediaType,
+                                      String tag) throws IOException {
+        String fileId = FileIdGenerator.generate(tenantId);
+        StorageService.StoredFile stored = blobStoreService.adopt(tenantCode, storageService.saveFile(file, tenantCode, fileId));
 
-            return saveFileEntity(tenantId, tenantCode, file, tag);
+        return saveEntity(toEntity(tenantId, fileId, file.getOriginalFilename(), mediaType, tag, stored), stored);
+    }
 
-        } catch (InvalidFileException e) {
-            throw e; // propagate validation failure
-        } finally {
-            if (extractedDir != null) {
-                storageService.deleteTempFolder(extractedDir);
-            }
+    // the stored bytes (or blob reference) must not outlive a row that failed to save
+    private FileEntity saveEntity(FileEntity entity, StorageService.StoredFile stored) {
+        try {
+            return fileRepository.save(entity);
+        } catch (RuntimeException e) {
+            blobStoreService.delete(stored);
+            throw e;
         }
     }
 
-
-    private FileEntity saveFileEntity(Long tenantId, String tenantCode, MultipartFile file, String tag) throws IOException {
-        String fileId = FileIdGenerator.generate(tenantId);
-        String relativePath = storageService.saveFile(file, tenantCode, fileId);
-
-        FileEntity entity = FileEntity.builder()
+    private FileEntity toEntity(Long tenantId, String fileId, String fileName, String mediaType, String tag,
+                                StorageService.StoredFile stored) {
+        return FileEntity.builder()
                 .id(fileId)
                 .tenantId(tenantId)
-                .fileName(file.getOriginalFilename())
-                .filePath(relativePath)
-                .mediaType(file.getContentType())
-                .fileSizeBytes(file.getSize())
+                .fileName(fileName)
+                .filePath(stored.relativePath())
+                .mediaType(mediaType)
+                .fileSizeBytes(stored.sizeBytes())
+                .contentSha256(stored.sha256())
+                .blobScope(stored.blobScope())
                 .tag(tag)
                 .metadata(Map.of())
                 .createdAt(OffsetDateTime.now())
                 .modifiedAt(OffsetDateTime.now())
                 .build();
-
-        return fileRepository.save(entity);
     }
 
 
 
 
-    public List<FileEntity> searchFiles(Long tenantId, FileSearchRequest req) {
-        List<FileEntity> tenantFiles = fileRepository.findByTenantId(tenantId);
+    public Slice<FileEntity> searchFiles(Long tenantId, FileSearchRequest req) {
+        Pageable pageable = toPageable(req);
+        log.debug("Searching files - tenantId={}, page={}, size={}, sort={}",
+                tenantId, pageable.getPageNumber(), pageable.getPageSize(), pageable.getSort());
+
+        return fileRepository.findBy(FileSpecifications.forSearch(tenantId, req),
+                query -> query.slice(pageable));
+    }
+
+    private Pageable toPageable(FileSearchRequest req) {
+        int page = req.getPage() != null ? Math.max(req.getPage(), 0) : 0;
+        int size = req.getSize() != null ? Math.min(Math.max(req.getSize(), 1), MAX_SEARCH_PAGE_SIZE) : DEFAULT_SEARCH_PAGE_SIZE;
 
-        return tenantFiles.stream()
-                .filter(file -> req.getFileName() == null ||
-                        file.getFileName().toLowerCase().contains(req.getFileName().toLowerCase()))
-                .filter(file -> req.getTag() == null ||
-                        (file.getTag() != null && file.getTag().toLowerCase().contains(req.getTag().toLowerCase())))
-                .filter(file -> req.getMediaType() == null ||
-                        (file.getMediaType() != null && file.getMediaType().equalsIgnoreCase(req.getMediaType())))
-                .filter(file -> req.getMinSizeBytes() == null || file.getFileSizeBytes() >= req.getMinSizeBytes())
-                .filter(file -> req.getMaxSizeBytes() == null || file.getFileSizeBytes() <= req.getMaxSizeBytes())
-                .filter(file ->
-                {
-                    if (req.getStartDate() == null || req.getEndDate() == null)
-                        return true;
+        String sortBy = req.getSortBy() != null ? req.getSortBy() : "modifiedAt";
+        if (FileSpecifications.RELEVANCE_SORT.equals(sortBy)) {
+            if (req.getFileName() == null) {
+                throw new InvalidFileException("Sorting by relevance requires a fileName");
+            }
+            // ordering by similarity is applied by the specification itself
+            return PageRequest.of(page, size);
+        }
+        if (!SEARCH_SORT_FIELDS.contains(sortBy)) {
+            throw new InvalidFileException("Unsupported sort field '" + sortBy + "', expected one of " + SEARCH_SORT_FIELDS);
+        }
 
-                    OffsetDateTime modifiedAt = file.getModifiedAt();
+        Sort.Direction direction = Sort.Direction.DESC;
+        if (req.getSortDirection() != null) {
+            direction = Sort.Direction.fromOptionalString(req.getSortDirection())
+                    .orElseThrow(() -> new InvalidFileException("Unsupported sort direction '" + req.getSortDirection() + "'"));
+        }
 
-                    return !modifiedAt.toLocalDate().isBefore(req.getStartDate()) &&
-                            !modifiedAt.toLocalDate().isAfter(req.getEndDate());
-                })
-                .collect(Collectors.toList());
+        // id as tie breaker keeps page boundaries stable when the sort column has duplicates
+        return PageRequest.of(page, size, Sort.by(direction, sortBy).and(Sort.by(direction, "id")));
     }
 
     public FileEntity updateFileMetadata(Long tenantId, String fileId, FileUpdateRequest request) {
@@ -209,39 +277,85 @@ public class FileService {
 
     @Transactional
     public void deleteFile(Long tenantId, String fileId) {
-        FileEntity file = fileRepository.findById(fileId)
+        // locked, so the path (or blob) released below is the one the row still has when it is deleted
+        FileEntity file = fileRepository.findByIdForUpdate(fileId)
                 .orElseThrow(() -> new InvalidFileException("File not found with ID: " + fileId));
 
         if (!file.getTenantId().equals(tenantId)) {
             throw new InvalidFileException("File does not belong to tenant " + tenantId);
         }
 
-        // Delete physical file from disk
-        storageService.deleteFile(file.getFilePath());
+        // Delete physical file from disk, or drop this row's reference to a shared blob
+        blobStoreService.delete(file);
 
         // Delete metadata from DB
         fileRepository.delete(file);
+        vectorIndexService.onFileDeleted(tenantId, fileId);
+        vectorSegmentService.onFileDeleted(tenantId, fileId);
     }
 
 
-    public List<FileEntity> getAllFilesByTenant(Long tenantId) {
-        List<FileEntity> files = fileRepository.findByTenantId(tenantId);
+    public CursorPageResponse<FileEntity> listFilesByTenant(Long tenantId, String cursor, int limit) {
+        int pageSize = Math.min(Math.max(limit, 1), MAX_LIST_PAGE_SIZE);
 
-        if (files.isEmpty()) {
-            throw new InvalidFileException("No files found for tenant ID: " + tenantId);
+        // read one extra row to know whether another page exists
+        List<FileEntity> files;
+        if (cursor == null || cursor.isBlank()) {
+            files = fileRepository.findFirstPageByTenantId(tenantId, pageSize + 1);
+        } else {
+            FileCursor after = FileCursor.decode(cursor);
+            files = fileRepository.findPageByTenantIdAfter(tenantId, after.createdAt(), after.id(), pageSize + 1);
         }
 
-        return files;
+        String nextCursor = null;
+        if (files.size() > pageSize) {
+            files = files.subList(0, pageSize);
+            FileEntity last = files.get(pageSize - 1);
+            nextCursor = new FileCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+
+        log.debug("Listed {} files for tenant {} - hasNext={}", files.size(), tenantId, nextCursor != null);
+        return new CursorPageResponse<>(files, nextCursor);
+    }
+
+    /**
+     * Writes every file of the tenant as newline delimited JSON, reading rows through a forward-only cursor.
+     * Entities are detached as soon as they are written so the persistence context stays empty.
+     */
+    @Transactional
+    public long exportFilesByTenant(Long tenantId, OutputStream out) throws IOException {
+        // the stream belongs to the servlet response, so neither close nor flush it per row
+        ObjectWriter writer = objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        long count = 0;
+        try (Stream<FileEntity> files = fileRepository.streamByTenantId(tenantId)) {
+            Iterator<FileEntity> it = files.iterator();
+            while (it.hasNext()) {
+                FileEntity file = it.next();
+                writer.writeValue(out, file);
+                out.write('\n');
+                entityManager.detach(file);
+
+                if (++count % EXPORT_FLUSH_INTERVAL == 0) {
+                    out.flush();
+                }
+            }
+        }
+        out.flush();
+        log.info("Exported {} files for tenant {}", count, tenantId);
+        return count;
     }
 
     public Resource getFileAsResource(FileEntity fileEntity) {
         return storageService.loadFileAsResource(fileEntity.getFilePath());
     }
 
+    // detected once at upload (or by MediaTypeBackfillService for older rows), the file is not opened again
     public String getMediaType(FileEntity fileEntity) {
-        Path filePath = storageService.resolveFilePath(fileEntity.getFilePath());
-        String detectedType = storageService.detectMimeType(filePath);
-        return detectedType != null ? detectedType : "application/octet-stream";
+        String mediaType = fileEntity.getMediaType();
+        return mediaType != null && !mediaType.isBlank() ? mediaType : "application/octet-stream";
     }
 
 }
\ No newline at end of file
@@ -1,116 +1,217 @@
 package com.example.file_repository_service.service;
 
+import com.example.file_repository_service.config.GeminiProperties;
+import com.example.file_repository_service.util.CircuitBreaker;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 @Log4j2
 @Component
 public class GeminiClient {
 
-    private final RestTemplate restTemplate;
+    private final GeminiProperties properties;
     private final ObjectMapper objectMapper;
-    private final String apiKey;
-
-    // Endpoint for single/batch embedContent
-    private static final String GEMINI_EMBED_CONTENT_URL =
-            "https://generativelanguage.googleapis.com/v1beta/models/gemini-embedding-001:embedContent";
-
-    public GeminiClient(@Value("${gemini.api.key}") String apiKey) {
-        this.restTemplate = new RestTemplate();
+    // pooled, HTTP/2 capable client shared by every request
+    private final HttpClient httpClient;
+    // bounds the number of requests in flight across all callers
+    private final ExecutorService requestExecutor;
+    private final CircuitBreaker circuitBreaker;
+    private final URI batchEmbedUri;
+
+    public GeminiClient(GeminiProperties properties) {
+        this.properties = properties;
         this.objectMapper = new ObjectMapper();
-        this.apiKey = apiKey;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(properties.getConnectTimeoutMs()))
+                .build();
+        this.requestExecutor = Executors.newFixedThreadPool(properties.getMaxConcurrentRequests());
+        this.circuitBreaker = new CircuitBreaker("gemini",
+                properties.getCircuitBreakerFailureThreshold(), properties.getCircuitBreakerOpenMs());
+        this.batchEmbedUri = URI.create(properties.getBaseUrl() + "/models/" + properties.getModel() + ":batchEmbedContents");
     }
 
     /**
      * Generate an embedding for a single text chunk.
-     * Returns List<Float> representing the embedding vector.
+     * Returns float[] representing the embedding vector.
+     */
+    public float[] generateEmbeddings(String text) {
+        return generateEmbeddings(List.of(text)).get(0);
+    }
+
+    /**
+     * Generate embeddings for several texts. Texts are packed into batchEmbedContents calls of
+     * {@code batchSize} and the calls run concurrently, results come back in input order.
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        return generateEmbeddings(texts, null);
+    }
+
+    /**
+     * Same as {@link #generateEmbeddings(List)}, asking the model for {@code outputDimensionality} values per
+     * vector (Matryoshka truncation on the server side). {@code null} keeps the model default.
      */
-    public List<Float> generateEmbeddings(String text) {
+    public List<float[]> generateEmbeddings(List<String> texts, Integer outputDimensionality) {
+        int batchSize = properties.getBatchSize();
+        List<CompletableFuture<List<float[]>>> calls = new ArrayList<>();
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            List<String> batch = texts.subList(from, Math.min(from + batchSize, texts.size()));
+            calls.add(CompletableFuture.supplyAsync(() -> embedBatchWithRetry(batch, outputDimensionality), requestExecutor));
+        }
+
+        List<float[]> vectors = new ArrayList<>(texts.size());
         try {
-            log.info("Generating embeddings from Gemini API for text length={}", text != null ? text.length() : 0);
-            // Build request JSON:
-            // { "model": "models/gemini-embedding-001",
-            //   "content": { "parts":[ { "text": "<text>" } ] } }
-            JsonNode payload = objectMapper.createObjectNode()
-                    .put("model", "models/gemini-embedding-001")
-                    .set("content",
-                            objectMapper.createObjectNode().set("parts",
-                                    objectMapper.createArrayNode().add(
-                                            objectMapper.createObjectNode().put("text", text)
-                                    )
-                            )
-                    );
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            // IMPORTANT: pass API key in header as x-goog-api-key
-            headers.set("x-goog-api-key", apiKey);
-
-            HttpEntity<String> entity = new HttpEntity<>(objectMapper.writeValueAsString(payload), headers);
-
-            ResponseEntity<String> response = restTemplate.exchange(
-                    GEMINI_EMBED_CONTENT_URL,
-                    HttpMethod.POST,
-                    entity,
-                    String.class
-            );
-
-            if (!response.getStatusCode().is2xxSuccessful()) {
-                log.error("Gemini API returned non-2xx: status={} body={}", response.getStatusCode(), response.getBody());
-                throw new RuntimeException("Gemini API returned: " + response.getStatusCode() +
-                        " body: " + response.getBody());
+            for (CompletableFuture<List<float[]>> call : calls) {
+                vectors.addAll(call.join());
             }
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("Embedding generation failed: {}", cause.getMessage(), cause);
+            throw new RuntimeException("Failed to generate embeddings: " + cause.getMessage(), cause);
+        }
+        return vectors;
+    }
 
-            JsonNode root = objectMapper.readTree(response.getBody());
-
-            // Response structure (per docs): result.embeddings -> list of embedding objects,
-            // each has .values (array of numbers). For embedContent with a single content, docs
-            // show embeddings in result.embeddings[0].values.
-            // We'll try both common shapes:
-            // 1) { "embeddings": [ { "values": [ ... ] } ] }
-            // 2) { "embedding": { "values": [ ... ] } } (older)
-            List<Float> vector = new ArrayList<>();
-
-            if (root.has("embeddings") && root.get("embeddings").isArray()) {
-                JsonNode embeddingsArr = root.get("embeddings");
-                JsonNode first = embeddingsArr.get(0);
-                if (first != null && first.has("values") && first.get("values").isArray()) {
-                    for (JsonNode v : first.get("values")) {
-                        vector.add(v.floatValue());
-                    }
-                    return vector;
-                }
+    // texts per generateEmbeddings(List) call that keep every request slot busy
+    public int recommendedChunkSize() {
+        return properties.getBatchSize() * properties.getMaxConcurrentRequests();
+    }
+
+    private List<float[]> embedBatchWithRetry(List<String> texts, Integer outputDimensionality) {
+        int attempt = 0;
+        while (true) {
+            if (!circuitBreaker.allowRequest()) {
+                throw new RuntimeException("Gemini API circuit breaker is open, not sending request");
             }
 
-            if (root.has("embedding") && root.get("embedding").has("values")) {
-                for (JsonNode v : root.get("embedding").get("values")) {
-                    vector.add(v.floatValue());
+            long retryAfterMs = -1;
+            String failure;
+            try {
+                HttpResponse<String> response = send(texts, outputDimensionality);
+                int status = response.statusCode();
+                if (status >= 200 && status < 300) {
+                    circuitBreaker.recordSuccess();
+                    return parseBatchResponse(response.body(), texts.size());
                 }
-                return vector;
+                failure = "Gemini API returned: " + status + " body: " + response.body();
+                if (status != 429 && status < 500) {
+                    // the request itself is wrong, retrying will not help and the service is healthy; recorded as
+                    // such so a half-open trial that ends here closes the circuit instead of leaving it half-open
+                    log.error("Gemini API returned non-retryable status: status={} body={}", status, response.body());
+                    circuitBreaker.recordSuccess();
+                    throw new RuntimeException(failure);
+                }
+                retryAfterMs = response.headers().firstValue("Retry-After")
+                        .map(this::parseRetryAfterMs).orElse(-1L);
+            } catch (IOException e) {
+                failure = "Gemini API request failed: " + e.getMessage();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // no outcome either way, but a half-open trial must not stay unanswered
+                circuitBreaker.recordFailure();
+                throw new RuntimeException("Interrupted while calling Gemini API", e);
+            }
+
+            circuitBreaker.recordFailure();
+            if (++attempt > properties.getMaxRetries()) {
+                throw new RuntimeException(failure + " (after " + attempt + " attempts)");
+            }
+
+            long delay = retryAfterMs >= 0 ? retryAfterMs : backoffWithJitter(attempt);
+            log.warn("Gemini call failed, retry {}/{} in {} ms - {}", attempt, properties.getMaxRetries(), delay, failure);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to retry Gemini API call", e);
             }
+        }
+    }
 
-            // Fallback: try root.path("embedding").path("values") (defensive)
-            JsonNode fallback = root.path("embedding").path("values");
-            if (fallback.isArray()) {
-                for (JsonNode v : fallback) vector.add(v.floatValue());
-                return vector;
+    private HttpResponse<String> send(List<String> texts, Integer outputDimensionality) throws IOException, InterruptedException {
+        log.info("Generating embeddings from Gemini API - texts={}", texts.size());
+        // Build request JSON:
+        // { "requests": [ { "model": "models/gemini-embedding-001",
+        //                   "content": { "parts":[ { "text": "<text>" } ] },
+        //                   "outputDimensionality": 768 }, ... ] }
+        ObjectNode payload = objectMapper.createObjectNode();
+        ArrayNode requests = payload.putArray("requests");
+        for (String text : texts) {
+            ObjectNode request = requests.addObject();
+            request.put("model", "models/" + properties.getModel());
+            request.putObject("content").putArray("parts").addObject().put("text", text);
+            if (outputDimensionality != null) {
+                request.put("outputDimensionality", outputDimensionality);
             }
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(batchEmbedUri)
+                .timeout(Duration.ofMillis(properties.getRequestTimeoutMs()))
+                .header("Content-Type", "application/json")
+                // IMPORTANT: pass API key in header as x-goog-api-key
+                .header("x-goog-api-key", properties.getKey())
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(payload)))
+                .build();
 
-            log.error("Unexpected Gemini response: {}", response.getBody());
-            throw new RuntimeException("Unexpected Gemini response: " + response.getBody());
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
 
-        } catch (Exception e) {
-            log.error("Embedding generation failed: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to generate embeddings: " + e.getMessage(), e);
+    // Response structure: { "embeddings": [ { "values": [ ... ] }, ... ] } in request order
+    private List<float[]> parseBatchResponse(String body, int expected) throws IOException {
+        JsonNode embeddings = objectMapper.readTree(body).path("embeddings");
+        if (!embeddings.isArray() || embeddings.size() != expected) {
+            log.error("Unexpected Gemini response: {}", body);
+            throw new RuntimeException("Unexpected Gemini response: expected " + expected + " embeddings");
         }
+
+        List<float[]> vectors = new ArrayList<>(expected);
+        for (JsonNode embedding : embeddings) {
+            JsonNode values = embedding.path("values");
+            float[] vector = new float[values.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = values.get(i).floatValue();
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+
+    // equal jitter: half of the exponential delay is fixed, the other half random
+    private long backoffWithJitter(int attempt) {
+        long delay = Math.min(properties.getMaxBackoffMs(), properties.getInitialBackoffMs() << Math.min(attempt - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private long parseRetryAfterMs(String value) {
+        try {
+            return Math.min(Long.parseLong(value.trim()) * 1000L, properties.getMaxBackoffMs());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdownNow();
     }
 }
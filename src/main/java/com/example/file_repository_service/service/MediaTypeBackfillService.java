@@ -0,0 +1,115 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.MediaTypeBackfillProperties;
+import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.repository.FileRepository;
+import com.example.file_repository_service.util.MediaTypeDetector;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One-off ({@code file.repository.maintenance.media-type-backfill.enabled}) pass that re-detects the media type
+ * of every stored file and records it where it differs from the row, for files uploaded while the client's
+ * Content-Type was stored. Rows are read in keyset pages by id and each page is detected on a small pool.
+ * It runs on its own thread after startup, so readiness is not held back; turn the flag off once it logged
+ * that it finished.
+ */
+@Log4j2
+@Component
+public class MediaTypeBackfillService implements ApplicationRunner {
+
+    private final FileRepository fileRepository;
+    private final StorageService storageService;
+    private final MediaTypeDetector mediaTypeDetector;
+    private final MediaTypeBackfillProperties properties;
+
+    public MediaTypeBackfillService(FileRepository fileRepository,
+                                    StorageService storageService,
+                                    MediaTypeDetector mediaTypeDetector,
+                                    MediaTypeBackfillProperties properties) {
+        this.fileRepository = fileRepository;
+        this.storageService = storageService;
+        this.mediaTypeDetector = mediaTypeDetector;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isEnabled()) return;
+
+        Thread thread = new Thread(this::backfill, "media-type-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void backfill() {
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, properties.getThreads()));
+        long start = System.nanoTime();
+        long scanned = 0;
+        long updated = 0;
+        long missing = 0;
+        String afterId = "";
+
+        log.info("Media type backfill started - batchSize={}, threads={}", properties.getBatchSize(), properties.getThreads());
+        try {
+            List<FileEntity> batch;
+            while (!(batch = fileRepository.findBatchAfterId(afterId, properties.getBatchSize())).isEmpty()) {
+                List<Future<String>> detected = new ArrayList<>(batch.size());
+                for (FileEntity file : batch) {
+                    detected.add(workers.submit(() -> detect(file)));
+                }
+
+                for (int i = 0; i < batch.size(); i++) {
+                    FileEntity file = batch.get(i);
+                    String mediaType = detected.get(i).get();
+                    if (mediaType == null) {
+                        missing++;
+                    } else if (!mediaType.equals(file.getMediaType())) {
+                        fileRepository.updateMediaType(file.getId(), mediaType);
+                        updated++;
+                    }
+                }
+
+                scanned += batch.size();
+                afterId = batch.get(batch.size() - 1).getId();
+                log.info("Media type backfill progress - scanned={}, updated={}, missing={}", scanned, updated, missing);
+            }
+            log.info("Media type backfill finished - scanned={}, updated={}, missing={}, took={} ms",
+                    scanned, updated, missing, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Media type backfill interrupted - lastId={}, scanned={}", afterId, scanned);
+        } catch (Exception e) {
+            // rows up to lastId are done; a restart with the flag on goes over them again but writes nothing for them
+            log.error("Media type backfill failed - lastId={}, scanned={}, error={}", afterId, scanned, e.getMessage(), e);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // null when the stored file is gone, its row is left as it is
+    private String detect(FileEntity file) {
+        try {
+            Path path = storageService.resolveFilePath(file.getFilePath());
+            if (!Files.isReadable(path)) {
+                log.warn("Media type backfill skipped missing file - fileId={}, path={}", file.getId(), file.getFilePath());
+                return null;
+            }
+            return mediaTypeDetector.detectMimeType(path);
+        } catch (RuntimeException e) {
+            log.warn("Media type backfill skipped file - fileId={}, error={}", file.getId(), e.getMessage());
+            return null;
+        }
+    }
+}
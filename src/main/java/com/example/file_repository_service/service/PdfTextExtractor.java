@@ -0,0 +1,183 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.PdfExtractionProperties;
+import com.example.file_repository_service.config.StorageProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Extraction stage of the embedding pipeline. A document is split into page ranges that a few workers pull
+ * from a shared cursor, each worker with its own document handle (PDDocument is not thread safe). Handles
+ * keep at most {@code maxMainMemoryBytes} of parsed streams on heap and spill the rest to the temp directory.
+ * Pages are handed over through a bounded queue as soon as they are extracted, in completion order.
+ */
+@Log4j2
+@Component
+public class PdfTextExtractor {
+
+    // how often a worker blocked on a full queue checks whether the reader went away
+    private static final long OFFER_TIMEOUT_MS = 200;
+
+    private final PdfExtractionProperties properties;
+    private final StorageProperties storageProperties;
+    private final ExecutorService workers;
+
+    public PdfTextExtractor(PdfExtractionProperties properties, StorageProperties storageProperties) {
+        this.properties = properties;
+        this.storageProperties = storageProperties;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(properties.getWorkerThreads(), r -> {
+            Thread thread = new Thread(r, "pdf-extract-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public record ExtractedPage(int pageNumber, String text) {
+    }
+
+    /**
+     * Starts extracting {@code pdf}. The returned stream must be closed, which also stops the workers
+     * when the reader gives up early.
+     */
+    public PageStream open(Path pdf) throws IOException {
+        int totalPages;
+        try (PDDocument document = load(pdf)) {
+            totalPages = document.getNumberOfPages();
+        }
+        PageStream stream = new PageStream(pdf, totalPages);
+        stream.start();
+        return stream;
+    }
+
+    private PDDocument load(Path pdf) throws IOException {
+        MemoryUsageSetting memory = MemoryUsageSetting.setupMixed(properties.getMaxMainMemoryBytes());
+        String tempPath = storageProperties.getTempPath();
+        if (tempPath != null) {
+            Path tempDir = Paths.get(tempPath);
+            Files.createDirectories(tempDir);
+            memory.setTempDir(tempDir.toFile());
+        }
+        return PDDocument.load(pdf.toFile(), memory);
+    }
+
+    public final class PageStream implements AutoCloseable {
+
+        // marks the end of one worker, whether it finished or failed
+        private static final ExtractedPage WORKER_DONE = new ExtractedPage(-1, null);
+
+        private final Path pdf;
+        private final int totalPages;
+        private final int workerCount;
+        private final BlockingQueue<ExtractedPage> queue;
+        private final AtomicInteger nextRangeStart = new AtomicInteger(1);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile boolean closed;
+        private int finishedWorkers;
+
+        private PageStream(Path pdf, int totalPages) {
+            this.pdf = pdf;
+            this.totalPages = totalPages;
+            int ranges = (totalPages + properties.getPagesPerRange() - 1) / properties.getPagesPerRange();
+            this.workerCount = Math.max(0, Math.min(properties.getWorkersPerDocument(), ranges));
+            this.queue = new ArrayBlockingQueue<>(Math.max(properties.getQueueCapacity(), workerCount));
+        }
+
+        private void start() {
+            log.debug("PDF extraction started - file={}, pages={}, workers={}", pdf.getFileName(), totalPages, workerCount);
+            for (int w = 0; w < workerCount; w++) {
+                workers.execute(this::work);
+            }
+        }
+
+        public int totalPages() {
+            return totalPages;
+        }
+
+        /**
+         * Next extracted page, blocking until one is ready; {@code null} once every page was returned.
+         */
+        public ExtractedPage next() throws IOException {
+            while (finishedWorkers < workerCount) {
+                ExtractedPage page;
+                try {
+                    page = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for extracted pages", e);
+                }
+                if (page != WORKER_DONE) {
+                    return page;
+                }
+                finishedWorkers++;
+                Throwable cause = failure.get();
+                if (cause != null) {
+                    throw new IOException("Text extraction failed: " + cause.getMessage(), cause);
+                }
+            }
+            return null;
+        }
+
+        private void work() {
+            try (PDDocument document = load(pdf)) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                int rangeSize = properties.getPagesPerRange();
+                int start;
+                while (!closed && failure.get() == null
+                        && (start = nextRangeStart.getAndAdd(rangeSize)) <= totalPages) {
+                    int end = Math.min(start + rangeSize - 1, totalPages);
+                    for (int page = start; page <= end && !closed; page++) {
+                        stripper.setStartPage(page);
+                        stripper.setEndPage(page);
+                        if (!hand(new ExtractedPage(page, stripper.getText(document).trim()))) return;
+                    }
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                // always signalled, otherwise the reader would wait forever
+                hand(WORKER_DONE);
+            }
+        }
+
+        // false when the reader closed the stream, nobody takes from the queue any more
+        private boolean hand(ExtractedPage page) {
+            try {
+                while (!queue.offer(page, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (closed) return false;
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            queue.clear();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.file_repository_service.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Old paths left behind by the online maintenance passes, deleted once their grace period is over. Downloads
+ * that resolved a row just before it moved (sendfile opens the file after the request handler returns) still
+ * find the file until then. Used from the pass's own thread only.
+ */
+class PendingFileDeletes {
+
+    private final StorageService storageService;
+    private final long graceNanos;
+    private final Deque<PendingDelete> pending = new ArrayDeque<>();
+
+    PendingFileDeletes(StorageService storageService, long graceMs) {
+        this.storageService = storageService;
+        this.graceNanos = TimeUnit.MILLISECONDS.toNanos(graceMs);
+    }
+
+    void add(String relativePath) {
+        pending.add(new PendingDelete(relativePath, System.nanoTime() + graceNanos));
+    }
+
+    // paths are added in due order, so only the head needs checking
+    void deleteDue() {
+        long now = System.nanoTime();
+        while (!pending.isEmpty() && pending.peekFirst().dueAt() - now <= 0) {
+            storageService.deleteFile(pending.pollFirst().relativePath());
+        }
+    }
+
+    // waits for the last grace period at the end of a pass
+    void drain() throws InterruptedException {
+        if (pending.isEmpty()) return;
+        long wait = pending.peekLast().dueAt() - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        deleteDue();
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    private record PendingDelete(String relativePath, long dueAt) {
+    }
+}
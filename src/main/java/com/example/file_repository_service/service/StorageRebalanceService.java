@@ -0,0 +1,130 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.StorageRebalanceProperties;
+import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.repository.FileRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in ({@code file.repository.maintenance.storage-rebalance.enabled}) online pass that moves files written
+ * under an older directory layout (flat {tenantCode}/{yyyy_MM} folders, or another shard level count) to where
+ * {@link StorageService} would put them now. Each move is a hard link to the new path, a conditional update of
+ * the row, and a delayed delete of the old path, so downloads keep working throughout. Moves are paced to
+ * {@code max-files-per-second}; the pass can be stopped and restarted at any time.
+ */
+@Log4j2
+@Component
+public class StorageRebalanceService implements ApplicationRunner {
+
+    private final FileRepository fileRepository;
+    private final StorageService storageService;
+    private final StorageRebalanceProperties properties;
+
+    public StorageRebalanceService(FileRepository fileRepository,
+                                   StorageService storageService,
+                                   StorageRebalanceProperties properties) {
+        this.fileRepository = fileRepository;
+        this.storageService = storageService;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isEnabled()) return;
+
+        Thread thread = new Thread(this::rebalance, "storage-rebalance");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void rebalance() {
+        long start = System.nanoTime();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, properties.getMaxFilesPerSecond());
+        PendingFileDeletes pendingDeletes = new PendingFileDeletes(storageService, properties.getOldPathGraceMs());
+        long nextMoveAt = System.nanoTime();
+        long scanned = 0;
+        long moved = 0;
+        long missing = 0;
+        long failed = 0;
+        String afterId = "";
+
+        log.info("Storage rebalance started - batchSize={}, maxFilesPerSecond={}",
+                properties.getBatchSize(), properties.getMaxFilesPerSecond());
+        try {
+            List<FileEntity> batch;
+            while (!(batch = fileRepository.findBatchAfterId(afterId, properties.getBatchSize())).isEmpty()) {
+                for (FileEntity file : batch) {
+                    scanned++;
+                    afterId = file.getId();
+                    // blobs are content addressed and sharded by hash already
+                    if (file.getBlobScope() != null || file.getFilePath() == null) continue;
+
+                    String oldPath = file.getFilePath();
+                    String newPath = storageService.shardedPath(oldPath, file.getId());
+                    if (newPath == null || newPath.equals(oldPath)) continue;
+                    if (!Files.isReadable(storageService.resolveFilePath(oldPath))) {
+                        missing++;
+                        continue;
+                    }
+
+                    long wait = nextMoveAt - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    nextMoveAt = Math.max(nextMoveAt, System.nanoTime() - intervalNanos) + intervalNanos;
+
+                    try {
+                        storageService.link(oldPath, newPath);
+                        if (fileRepository.updateFilePath(file.getId(), oldPath, newPath) > 0) {
+                            pendingDeletes.add(oldPath);
+                            moved++;
+                        } else {
+                            dropStrayLink(file.getId(), newPath);
+                        }
+                    } catch (Exception e) {
+                        // the row still points at the old path, a later run retries it
+                        log.warn("Storage rebalance failed for file - fileId={}, path={}, error={}",
+                                file.getId(), oldPath, e.getMessage());
+                        failed++;
+                    }
+                    pendingDeletes.deleteDue();
+                }
+                log.info("Storage rebalance progress - scanned={}, moved={}, missing={}, failed={}",
+                        scanned, moved, missing, failed);
+            }
+
+            pendingDeletes.drain();
+            log.info("Storage rebalance finished - scanned={}, moved={}, missing={}, failed={}, took={} ms",
+                    scanned, moved, missing, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // the rows already point at the new paths, the old links are only a leftover copy
+            log.warn("Storage rebalance interrupted - lastId={}, scanned={}, oldPathsLeft={}",
+                    afterId, scanned, pendingDeletes.size());
+        } catch (Exception e) {
+            log.error("Storage rebalance failed - lastId={}, scanned={}, error={}", afterId, scanned, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The row was deleted or moved by another node meanwhile and is left as it is. The link made for it keeps
+     * the inode, and with it the file's space, alive after the row's own path is deleted, so it goes unless the
+     * row now points at it.
+     */
+    private void dropStrayLink(String fileId, String newPath) {
+        boolean inUse = fileRepository.findById(fileId)
+                .map(current -> newPath.equals(current.getFilePath()))
+                .orElse(false);
+        if (!inUse) {
+            storageService.deleteFile(newPath);
+            log.debug("Storage rebalance dropped link of a changed row - fileId={}, path={}", fileId, newPath);
+        }
+    }
+}
@@ -2,63 +2,213 @@ package com.example.file_repository_service.service;
 
 import com.example.file_repository_service.config.StorageProperties;
 import com.example.file_repository_service.exception.FileStorageException;
-import com.example.file_repository_service.util.MediaTypeDetector;
+import com.example.file_repository_service.exception.InvalidFileException;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
-import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.HexFormat;
 
 @Service
 public class StorageService {
 
+    // enough for Tika's magic byte detection, the rest of an upload is never buffered
+    public static final int SNIFF_BYTES = 64 * 1024;
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+    public static final String BLOB_FOLDER = "_blobs";
+    // blob scope shared by all tenants; tenant codes never start with an underscore
+    public static final String GLOBAL_BLOB_SCOPE = "_global";
+
     private final Path basePath;
     private final Path tempPath;
-    private final MediaTypeDetector mediaTypeDetector;
+    private final int shardLevels;
 
-    public StorageService(StorageProperties properties, MediaTypeDetector mediaTypeDetector) throws IOException {
+    public StorageService(StorageProperties properties) throws IOException {
         this.basePath = Paths.get(properties.getBasePath()).toAbsolutePath().normalize();
         this.tempPath = Paths.get(properties.getTempPath()).toAbsolutePath().normalize();
-        this.mediaTypeDetector = mediaTypeDetector;
+        this.shardLevels = Math.max(0, Math.min(properties.getShardLevels(), 8));
 
         Files.createDirectories(basePath);
         Files.createDirectories(tempPath);
     }
 
-    public String saveFile(MultipartFile file, String tenantCode, String fileId) throws IOException {
-        try {
-            String originalName = file.getOriginalFilename();
-            String extension = "";
+    public StoredFile saveFile(MultipartFile file, String tenantCode, String fileId) throws IOException {
+        // already validated, so no limit and no inspection of the leading bytes
+        try (InputStream in = file.getInputStream()) {
+            return saveStream(in, tenantCode, fileId, file.getOriginalFilename(), Long.MAX_VALUE, null);
+        }
+    }
 
-            if (originalName != null && originalName.contains(".")) {
-                extension = originalName.substring(originalName.lastIndexOf('.') + 1);
-            }
+    /**
+     * Writes {@code in} to the tenant's storage in a single pass: the leading {@link #SNIFF_BYTES} are handed
+     * to {@code headInspector} (which may reject the upload) before anything touches the disk, then every byte
+     * is hashed, counted against {@code maxBytes} and written to a temp file next to the target. The temp file
+     * is moved in place atomically, so a failed or aborted upload never leaves a partial file behind.
+     */
+    public StoredFile saveStream(InputStream in, String tenantCode, String fileId, String originalName,
+                                 long maxBytes, HeadInspector headInspector) throws IOException {
+        byte[] head = in.readNBytes(SNIFF_BYTES);
+        if (head.length > maxBytes) {
+            throw new InvalidFileException("File size exceeds the limit of " + maxBytes / 1024 + " KB");
+        }
+        if (headInspector != null) {
+            headInspector.inspect(head);
+        }
 
-            String folderName = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy_MM"));
-            Path tenantFolder = basePath.resolve(tenantCode).resolve(folderName);
-            Files.createDirectories(tenantFolder);
+        Path targetFile;
+        Path tempFile;
+        try {
+            targetFile = targetPath(tenantCode, fileId, originalName);
+            tempFile = Files.createTempFile(targetFile.getParent(), fileId, ".part");
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to save file to disk for tenant " + tenantCode, e);
+        }
 
-            String fileName = fileId + (extension.isEmpty() ? "" : "." + extension);
-            Path targetFile = tenantFolder.resolve(fileName);
-            file.transferTo(targetFile);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size = head.length;
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                digest.update(head);
+                out.write(head);
+
+                byte[] buffer = new byte[COPY_BUFFER_BYTES];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes) {
+                        throw new InvalidFileException("File size exceeds the limit of " + maxBytes / 1024 + " KB");
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            Files.move(tempFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
 
-            Path relativePath = basePath.relativize(targetFile);
-            return relativePath.toString().replace("\\", "/");
+            String relativePath = basePath.relativize(targetFile).toString().replace("\\", "/");
+            return new StoredFile(relativePath, size, HexFormat.of().formatHex(digest.digest()), null);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         } catch (IOException e) {
             throw new FileStorageException("Failed to save file to disk for tenant " + tenantCode, e);
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
     }
 
+    private Path targetPath(String tenantCode, String fileId, String originalName) throws IOException {
+        String extension = "";
+        if (originalName != null && originalName.contains(".")) {
+            extension = originalName.substring(originalName.lastIndexOf('.') + 1);
+        }
+
+        String folderName = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy_MM"));
+        Path tenantFolder = basePath.resolve(tenantCode).resolve(folderName).resolve(shardDirectories(fileId));
+        Files.createDirectories(tenantFolder);
+
+        String fileName = fileId + (extension.isEmpty() ? "" : "." + extension);
+        return tenantFolder.resolve(fileName);
+    }
+
+    // "aa/bb" for two levels, "" when sharding is off; stable for a file id, spread evenly by the hash
+    private String shardDirectories(String fileId) {
+        if (shardLevels == 0) return "";
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(fileId.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder directories = new StringBuilder();
+        for (int level = 0; level < shardLevels; level++) {
+            if (level > 0) directories.append('/');
+            directories.append(HexFormat.of().toHexDigits(hash[level]));
+        }
+        return directories.toString();
+    }
+
+    /**
+     * Where {@code relativePath} (a {tenantCode}/{yyyy_MM}/.../{file} path) belongs in the configured layout:
+     * same tenant and month folder and file name, shard directories recomputed from the file id. Null for paths
+     * outside that layout, such as blobs.
+     */
+    public String shardedPath(String relativePath, String fileId) {
+        String[] segments = relativePath.replace("\\", "/").split("/");
+        if (segments.length < 3 || segments[0].startsWith("_")) return null;
+
+        String shards = shardDirectories(fileId);
+        return segments[0] + "/" + segments[1] + "/" + (shards.isEmpty() ? "" : shards + "/")
+                + segments[segments.length - 1];
+    }
+
+    // blobScope is set once the file has been handed to BlobStoreService and relativePath is the shared blob
+    public record StoredFile(String relativePath, long sizeBytes, String sha256, String blobScope) {
+    }
+
+    // _blobs/{scope}/{aa}/{bb}/{sha256}, two levels of fan-out keep every directory small
+    public String blobPath(String scope, String sha256) {
+        return BLOB_FOLDER + "/" + scope + "/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256;
+    }
+
+    /**
+     * Makes {@code targetRelativePath} exist with the content of {@code sourceRelativePath}, without copying
+     * bytes: a hard link when the target is missing, nothing when it is already there (a blob of the same hash,
+     * or the link an interrupted move left behind). The source is left in place, the caller deletes it once
+     * nothing refers to it any more.
+     */
+    public void link(String sourceRelativePath, String targetRelativePath) throws IOException {
+        Path source = resolveFilePath(sourceRelativePath);
+        Path target = resolveFilePath(targetRelativePath);
+        if (Files.exists(target)) return;
+
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            // a concurrent upload of the same content got there first
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // no hard links on this file system (or across devices), fall back to a copy moved in atomically
+            Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    // hex SHA-256 of a stored file, for rows written before uploads were hashed
+    public String sha256(String relativePath) throws IOException {
+        try (InputStream in = Files.newInputStream(resolveFilePath(relativePath))) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[COPY_BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface HeadInspector {
+        // leading bytes of the upload, at most SNIFF_BYTES; throw to reject it
+        void inspect(byte[] head);
+    }
+
     public void deleteFile(String relativePath) {
         try {
             Path fileToDelete = basePath.resolve(relativePath).normalize();
@@ -84,40 +234,4 @@ public class StorageService {
             throw new FileStorageException("Failed to load file as resource: " + relativePath, e);
         }
     }
-
-    // Updated to use MediaTypeDetector
-    public String detectMimeType(Path filePath) {
-        return mediaTypeDetector.detectMimeType(filePath);
-    }
-
-    public Path extractZipToTemp(MultipartFile zipFile, String tenantCode, String zipId) throws IOException {
-        Path zipTempDir = tempPath.resolve(tenantCode).resolve(zipId);
-        Files.createDirectories(zipTempDir);
-
-        try (ZipInputStream zis = new ZipInputStream(zipFile.getInputStream())) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (entry.isDirectory()) continue;
-
-                Path extractedFile = zipTempDir.resolve(entry.getName()).normalize();
-                Files.createDirectories(extractedFile.getParent());
-
-                try (OutputStream os = Files.newOutputStream(extractedFile)) {
-                    zis.transferTo(os);
-                }
-            }
-        }
-
-        return zipTempDir;
-    }
-
-    public void deleteTempFolder(Path tempFolder) {
-        if (Files.exists(tempFolder)) {
-            try (Stream<Path> walk = Files.walk(tempFolder)) {
-                walk.sorted(Comparator.reverseOrder()).forEach(path -> {
-                    try { Files.deleteIfExists(path); } catch (IOException ignored) {}
-                });
-            } catch (IOException ignored) {}
-        }
-    }
 }
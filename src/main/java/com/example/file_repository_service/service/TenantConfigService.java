@@ -5,6 +5,7 @@ import com.example.file_repository_service.repository.TenantConfigRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -18,6 +19,9 @@ import org.apache.tika.Tika;
 @Transactional
 public class TenantConfigService
 {
+    public static final String EMBEDDING_DIMENSIONS_KEY = "embeddingDimensions";
+    public static final int DEFAULT_EMBEDDING_DIMENSIONS = 1536;
+
     private final TenantConfigRepository tenantRepo;
 
     public TenantConfigService(TenantConfigRepository tenantRepo) { this.tenantRepo = tenantRepo;}
@@ -48,14 +52,7 @@ public class TenantConfigService
 
     public TenantConfig createTenantConfigFromRequest(TenantConfigRequest request)
     {
-        Map<String, Object> config = Map.of(
-                "maxFileSizeKBytes", request.getMaxFileSizeKBytes(),
-                "allowedExtensions", request.getAllowedExtensions(),
-                "forbiddenExtensions", request.getForbiddenExtensions(),
-                "allowedMimeTypes", request.getAllowedMimeTypes(),
-                "forbiddenMimeTypes", request.getForbiddenMimeTypes()
-        );
-        return createTenantConfig(config);
+        return createTenantConfig(toConfig(request));
     }
 
 
@@ -74,15 +71,39 @@ public class TenantConfigService
         TenantConfig existing = tenantRepo.findById(tenantId)
                 .orElseThrow(() -> new TenantNotFoundException("Tenant ID " + tenantId + " not found"));
 
-        Map<String, Object> updatedConfig = Map.of(
-                "maxFileSizeKBytes", request.getMaxFileSizeKBytes(),
-                "allowedExtensions", request.getAllowedExtensions(),
-                "forbiddenExtensions", request.getForbiddenExtensions(),
-                "allowedMimeTypes", request.getAllowedMimeTypes(),
-                "forbiddenMimeTypes", request.getForbiddenMimeTypes()
-        );
-
-        existing.setConfig(updatedConfig);
+        existing.setConfig(toConfig(request));
         return tenantRepo.save(existing);
     }
+
+    /**
+     * Embedding size of a tenant's vectors. Pages and queries of one tenant must agree on it,
+     * so changing it only applies to files embedded (or re-embedded) afterwards.
+     */
+    @Transactional(readOnly = true)
+    public int getEmbeddingDimensions(Long tenantId) {
+        return tenantRepo.findById(Math.toIntExact(tenantId))
+                .map(TenantConfig::getConfig)
+                .map(config -> config.get(EMBEDDING_DIMENSIONS_KEY))
+                .filter(Number.class::isInstance)
+                .map(value -> ((Number) value).intValue())
+                .orElse(DEFAULT_EMBEDDING_DIMENSIONS);
+    }
+
+    // optional fields are left out rather than stored as null, readers fall back to their defaults
+    private Map<String, Object> toConfig(TenantConfigRequest request) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("maxFileSizeKBytes", request.getMaxFileSizeKBytes());
+        putIfPresent(config, "allowedExtensions", request.getAllowedExtensions());
+        putIfPresent(config, "forbiddenExtensions", request.getForbiddenExtensions());
+        putIfPresent(config, "allowedMimeTypes", request.getAllowedMimeTypes());
+        putIfPresent(config, "forbiddenMimeTypes", request.getForbiddenMimeTypes());
+        putIfPresent(config, EMBEDDING_DIMENSIONS_KEY, request.getEmbeddingDimensions());
+        return config;
+    }
+
+    private static void putIfPresent(Map<String, Object> config, String key, Object value) {
+        if (value != null) {
+            config.put(key, value);
+        }
+    }
 }
\ No newline at end of file
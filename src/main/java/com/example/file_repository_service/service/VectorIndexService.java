@@ -0,0 +1,373 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.VectorSearchProperties;
+import com.example.file_repository_service.repository.EmbeddingRepository;
+import com.example.file_repository_service.repository.PageVector;
+import com.example.file_repository_service.util.HnswIndex;
+import com.example.file_repository_service.util.VectorHit;
+import com.example.file_repository_service.util.VectorMath;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Owns the in-process HNSW index of every tenant (engine HNSW). An index is built lazily on first use,
+ * from its disk snapshot when that still matches the database, otherwise from cf_filerepo_embeddings.
+ * Pages written on this node are added as they are saved; every index also carries a watermark (the latest
+ * modified_at it has read) and periodically re-reads the rows written after it, which brings in pages embedded
+ * on other nodes. A page count that disagrees with the table after that (deletes elsewhere) means a rebuild.
+ * Dirty indexes are snapshotted periodically, watermark included.
+ */
+@Log4j2
+@Service
+public class VectorIndexService {
+
+    private final EmbeddingRepository embeddingRepository;
+    private final VectorSearchProperties properties;
+    private final TenantConfigService tenantConfigService;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Map<Long, CompletableFuture<HnswIndex>> indexes = new ConcurrentHashMap<>();
+    // index version at the last snapshot, per tenant
+    private final Map<Long, Long> snapshotVersions = new ConcurrentHashMap<>();
+    // syncs in a row whose page count disagreed with the table, per tenant
+    private final Map<Long, Integer> countMismatches = new ConcurrentHashMap<>();
+
+    public VectorIndexService(EmbeddingRepository embeddingRepository,
+                              VectorSearchProperties properties,
+                              TenantConfigService tenantConfigService,
+                              PlatformTransactionManager transactionManager) {
+        this.embeddingRepository = embeddingRepository;
+        this.properties = properties;
+        this.tenantConfigService = tenantConfigService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public boolean isEnabled() {
+        return properties.getEngine() == VectorSearchProperties.Engine.HNSW;
+    }
+
+    public List<VectorHit> search(Long tenantId, float[] query, int topK) {
+        HnswIndex index = getOrLoad(tenantId);
+        if (index.dimensions() != query.length) {
+            // the tenant's embedding size changed since the index was built
+            evict(tenantId, indexes.get(tenantId));
+            index = getOrLoad(tenantId);
+        }
+        return index.search(query, topK, properties.getHnsw().getEfSearch());
+    }
+
+    /**
+     * Called after a page embedding is committed. Only indexes already in memory (or loading) are updated,
+     * a tenant that was never searched picks the page up from the database when it is first loaded.
+     */
+    public void onPageEmbedded(Long tenantId, String fileId, int pageId, float[] vector) {
+        if (!isEnabled()) return;
+
+        CompletableFuture<HnswIndex> index = indexes.get(tenantId);
+        if (index != null) {
+            // a load in progress may have read the table before this page was committed, add it once it finishes
+            index.thenAccept(i -> {
+                if (i.dimensions() == vector.length) {
+                    i.add(fileId, pageId, vector);
+                } else {
+                    // the tenant's embedding size changed, rebuild with the new size on next use
+                    evict(tenantId, index);
+                }
+            });
+        }
+    }
+
+    // pages whose rows a re-run deleted (no text any more); a tenant not in memory never sees them
+    public void onPagesRemoved(Long tenantId, String fileId, Collection<Integer> pageIds) {
+        CompletableFuture<HnswIndex> index = indexes.get(tenantId);
+        if (index != null) {
+            index.thenAccept(i -> i.removePages(fileId, pageIds));
+        }
+    }
+
+    public void onFileDeleted(Long tenantId, String fileId) {
+        CompletableFuture<HnswIndex> index = indexes.get(tenantId);
+        if (index != null) {
+            index.thenAccept(i -> i.removeFile(fileId));
+        }
+    }
+
+    /**
+     * Compares HNSW results with a brute-force scan over the same vectors. Stored page vectors are used as
+     * queries, so the numbers reflect the tenant's own data distribution.
+     */
+    public Map<String, Object> measureRecall(Long tenantId, int topK, int samples, Integer efSearch) {
+        HnswIndex index = getOrLoad(tenantId);
+        int ef = efSearch != null ? efSearch : properties.getHnsw().getEfSearch();
+        List<float[]> queries = index.sampleVectors(samples);
+
+        long hnswNanos = 0;
+        long exactNanos = 0;
+        long found = 0;
+        long expected = 0;
+        for (float[] query : queries) {
+            long start = System.nanoTime();
+            List<VectorHit> approximate = index.search(query, topK, ef);
+            hnswNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<VectorHit> exact = index.exactSearch(query, topK);
+            exactNanos += System.nanoTime() - start;
+
+            Set<String> exactKeys = new HashSet<>();
+            exact.forEach(h -> exactKeys.add(h.fileId() + '#' + h.pageId()));
+            expected += exactKeys.size();
+            found += approximate.stream().filter(h -> exactKeys.contains(h.fileId() + '#' + h.pageId())).count();
+        }
+
+        int queryCount = Math.max(queries.size(), 1);
+        Map<String, Object> report = new HashMap<>();
+        report.put("vectors", index.liveCount());
+        report.put("queries", queries.size());
+        report.put("top_k", topK);
+        report.put("m", properties.getHnsw().getM());
+        report.put("ef_search", ef);
+        report.put("recall", expected == 0 ? 1.0 : (double) found / expected);
+        report.put("avg_hnsw_micros", hnswNanos / 1000 / queryCount);
+        report.put("avg_exact_micros", exactNanos / 1000 / queryCount);
+        log.info("HNSW recall - tenantId={}, report={}", tenantId, report);
+        return report;
+    }
+
+    private HnswIndex getOrLoad(Long tenantId) {
+        CompletableFuture<HnswIndex> index = indexes.get(tenantId);
+        if (index == null) {
+            CompletableFuture<HnswIndex> created = new CompletableFuture<>();
+            index = indexes.putIfAbsent(tenantId, created);
+            if (index == null) {
+                // this thread loads, concurrent callers for the same tenant wait on the future
+                index = created;
+                try {
+                    created.complete(load(tenantId));
+                } catch (RuntimeException e) {
+                    indexes.remove(tenantId, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        return index.join();
+    }
+
+    private HnswIndex load(Long tenantId) {
+        int dimensions = tenantConfigService.getEmbeddingDimensions(tenantId);
+        Path snapshot = snapshotFile(tenantId);
+
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                HnswIndex index = HnswIndex.readFrom(in);
+                if (index.dimensions() == dimensions) {
+                    long snapshotVersion = index.version();
+                    int caughtUp = catchUp(tenantId, index);
+                    long rows = embeddingRepository.countByTenantIdAndDimensions(tenantId, dimensions);
+                    if (index.liveCount() == rows) {
+                        // pages caught up above make the snapshot dirty, it is rewritten on the next round
+                        snapshotVersions.put(tenantId, snapshotVersion);
+                        log.info("Loaded HNSW snapshot - tenantId={}, vectors={}, caughtUp={}", tenantId, rows, caughtUp);
+                        return index;
+                    }
+                    log.info("HNSW snapshot out of date, rebuilding - tenantId={}, snapshot={}, database={}",
+                            tenantId, index.liveCount(), rows);
+                }
+            } catch (IOException e) {
+                log.warn("Unreadable HNSW snapshot, rebuilding - tenantId={}, error={}", tenantId, e.getMessage());
+            }
+        }
+        return build(tenantId, dimensions);
+    }
+
+    /**
+     * Reads the tenant's vectors into memory inside a short read-only transaction, then builds the graph
+     * without holding a connection. The vectors end up in the index anyway, so the copy costs little extra.
+     */
+    private HnswIndex build(Long tenantId, int dimensions) {
+        long start = System.currentTimeMillis();
+        List<SourceVector> source = new ArrayList<>();
+        long[] watermark = {Long.MIN_VALUE};
+
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<PageVector> vectors = embeddingRepository.streamVectorsByTenantId(tenantId)) {
+                vectors.forEach(v -> {
+                    watermark[0] = Math.max(watermark[0], epochMillis(v));
+                    float[] vector = v.getEmbeddings();
+                    if (vector == null || vector.length != dimensions) {
+                        // embedded before the tenant's size changed, left out until the file is re-embedded
+                        return;
+                    }
+                    // rows written before ingest normalization are not unit length
+                    source.add(new SourceVector(v.getFileId(), v.getPageId(), VectorMath.normalize(vector)));
+                });
+            }
+        });
+        long loaded = System.currentTimeMillis();
+
+        VectorSearchProperties.Hnsw settings = properties.getHnsw();
+        HnswIndex index = new HnswIndex(dimensions, settings.getM(), settings.getEfConstruction());
+        for (SourceVector v : source) {
+            index.add(v.fileId(), v.pageId(), v.vector());
+        }
+        index.advanceWatermark(watermark[0]);
+
+        log.info("Built HNSW index - tenantId={}, dimensions={}, vectors={}, read={} ms, took={} ms", tenantId,
+                dimensions, index.liveCount(), loaded - start, System.currentTimeMillis() - start);
+        return index;
+    }
+
+    /**
+     * Adds the tenant's rows modified after the index watermark (less the overlap) and moves the watermark to
+     * the newest of them. Rows the index already holds unchanged are skipped by the index itself.
+     */
+    private int catchUp(Long tenantId, HnswIndex index) {
+        long watermark = index.watermark();
+        OffsetDateTime since = watermark == Long.MIN_VALUE
+                ? OffsetDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC)
+                : OffsetDateTime.ofInstant(Instant.ofEpochMilli(watermark - properties.getSyncOverlapMs()), ZoneOffset.UTC);
+
+        List<PageVector> rows = embeddingRepository.findVectorsModifiedAfter(tenantId, since);
+        long latest = watermark;
+        int added = 0;
+        for (PageVector v : rows) {
+            latest = Math.max(latest, epochMillis(v));
+            float[] vector = v.getEmbeddings();
+            if (vector == null || vector.length != index.dimensions()) continue;
+            index.add(v.getFileId(), v.getPageId(), VectorMath.normalize(vector));
+            added++;
+        }
+        index.advanceWatermark(latest);
+        return added;
+    }
+
+    @Scheduled(fixedDelayString = "${file.repository.vector.sync-interval-ms:30000}")
+    public void syncLoadedIndexes() {
+        if (!isEnabled()) return;
+
+        indexes.forEach((tenantId, future) -> {
+            if (!future.isDone() || future.isCompletedExceptionally()) return;
+            HnswIndex index = future.join();
+            try {
+                catchUp(tenantId, index);
+                long rows = embeddingRepository.countByTenantIdAndDimensions(tenantId, index.dimensions());
+                if (rows == index.liveCount()) {
+                    countMismatches.remove(tenantId);
+                } else if (countMismatches.merge(tenantId, 1, Integer::sum) >= 2) {
+                    // a page committed between the count and its onPageEmbedded call explains one mismatch,
+                    // two in a row mean rows deleted elsewhere, which only a rebuild drops
+                    log.info("HNSW index disagrees with the database, evicting for rebuild - tenantId={}, index={}, database={}",
+                            tenantId, index.liveCount(), rows);
+                    evict(tenantId, future);
+                }
+            } catch (RuntimeException e) {
+                log.warn("HNSW index sync failed - tenantId={}, error={}", tenantId, e.getMessage());
+            }
+        });
+    }
+
+    private static long epochMillis(PageVector v) {
+        return v.getModifiedAt() != null ? v.getModifiedAt().toInstant().toEpochMilli() : Long.MIN_VALUE;
+    }
+
+    @Scheduled(fixedDelayString = "${file.repository.vector.hnsw.snapshot-interval-ms:60000}")
+    public void snapshotDirtyIndexes() {
+        if (!isEnabled()) return;
+
+        indexes.forEach((tenantId, future) -> {
+            if (!future.isDone() || future.isCompletedExceptionally()) return;
+            HnswIndex index = future.join();
+
+            int total = index.liveCount() + index.deletedCount();
+            if (total > 0 && (double) index.deletedCount() / total > properties.getHnsw().getMaxDeletedRatio()) {
+                // too many tombstones hurt recall and memory, drop it and rebuild on next use
+                log.info("Evicting HNSW index for rebuild - tenantId={}, deleted={}/{}", tenantId, index.deletedCount(), total);
+                evict(tenantId, future);
+                return;
+            }
+            writeSnapshot(tenantId, index);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!isEnabled()) return;
+
+        indexes.forEach((tenantId, future) -> {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                writeSnapshot(tenantId, future.join());
+            }
+        });
+    }
+
+    private void evict(Long tenantId, CompletableFuture<HnswIndex> index) {
+        if (index != null && indexes.remove(tenantId, index)) {
+            snapshotVersions.remove(tenantId);
+            countMismatches.remove(tenantId);
+            deleteSnapshot(tenantId);
+        }
+    }
+
+    private void writeSnapshot(Long tenantId, HnswIndex index) {
+        long version = index.version();
+        if (snapshotVersions.getOrDefault(tenantId, -1L) == version) return;
+
+        Path target = snapshotFile(tenantId);
+        try {
+            Files.createDirectories(target.getParent());
+            // written aside and moved in place, a crash never leaves a truncated snapshot
+            Path temp = Files.createTempFile(target.getParent(), "tenant_" + tenantId, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                index.writeTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotVersions.put(tenantId, version);
+            log.debug("Wrote HNSW snapshot - tenantId={}, vectors={}", tenantId, index.liveCount());
+        } catch (IOException e) {
+            log.error("Failed to write HNSW snapshot - tenantId={}, error={}", tenantId, e.getMessage(), e);
+        }
+    }
+
+    private void deleteSnapshot(Long tenantId) {
+        try {
+            Files.deleteIfExists(snapshotFile(tenantId));
+        } catch (IOException e) {
+            log.warn("Failed to delete HNSW snapshot - tenantId={}, error={}", tenantId, e.getMessage());
+        }
+    }
+
+    private Path snapshotFile(Long tenantId) {
+        return Paths.get(properties.getHnsw().getSnapshotPath()).resolve("tenant_" + tenantId + ".hnsw");
+    }
+
+    private record SourceVector(String fileId, int pageId, float[] vector) {
+    }
+}
@@ -0,0 +1,369 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.VectorSearchProperties;
+import com.example.file_repository_service.repository.EmbeddingRepository;
+import com.example.file_repository_service.repository.PageVector;
+import com.example.file_repository_service.util.VectorHit;
+import com.example.file_repository_service.util.VectorMath;
+import com.example.file_repository_service.util.VectorQuantizer;
+import com.example.file_repository_service.util.VectorSegment;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Owns the flat vector segment of every tenant (engine FLAT), stored node-locally under
+ * {@code {segmentPath}/{tenantId}}; a segment directory is only ever written by the process holding its lock.
+ * Unlike the HNSW snapshots the segment is written on every page save, so it stays current across restarts.
+ * Like the HNSW index it keeps a modified_at watermark and periodically appends the rows written after it,
+ * pages embedded on other nodes included; a segment whose page count still disagrees with
+ * cf_filerepo_embeddings after that, on open or on two syncs in a row, is rebuilt from the table.
+ */
+@Log4j2
+@Service
+public class VectorSegmentService {
+
+    private final EmbeddingRepository embeddingRepository;
+    private final VectorSearchProperties properties;
+    private final TenantConfigService tenantConfigService;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ForkJoinPool scanPool;
+    private final Map<Long, CompletableFuture<VectorSegment>> segments = new ConcurrentHashMap<>();
+    // syncs in a row whose page count disagreed with the table, per tenant
+    private final Map<Long, Integer> countMismatches = new ConcurrentHashMap<>();
+
+    public VectorSegmentService(EmbeddingRepository embeddingRepository,
+                                VectorSearchProperties properties,
+                                TenantConfigService tenantConfigService,
+                                PlatformTransactionManager transactionManager) {
+        this.embeddingRepository = embeddingRepository;
+        this.properties = properties;
+        this.tenantConfigService = tenantConfigService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        int parallelism = properties.getFlat().getScanParallelism();
+        this.scanPool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+    }
+
+    public boolean isEnabled() {
+        return properties.getEngine() == VectorSearchProperties.Engine.FLAT;
+    }
+
+    public List<VectorHit> search(Long tenantId, float[] query, int topK) {
+        VectorSearchProperties.Flat flat = properties.getFlat();
+        long start = System.nanoTime();
+        VectorSegment segment = getOrOpen(tenantId);
+        if (segment.dimensions() != query.length) {
+            // the tenant's embedding size changed since the segment was written
+            evict(tenantId, segments.get(tenantId));
+            segment = getOrOpen(tenantId);
+        }
+        List<VectorHit> hits = segment.search(query, topK, scanPool, flat.getScanChunkRows(),
+                flat.getQuantization(), flat.getRescoreMultiplier());
+        log.debug("Flat segment scan - tenantId={}, rows={}, quantization={}, took={} us", tenantId,
+                segment.liveCount(), flat.getQuantization(), (System.nanoTime() - start) / 1000);
+        return hits;
+    }
+
+    /**
+     * Recall@k of a quantized search (two stage, with rescoring) against the exact float scan, using stored
+     * page vectors as queries.
+     */
+    public Map<String, Object> measureRecall(Long tenantId, int topK, int samples,
+                                             VectorQuantizer.Mode mode, Integer rescoreMultiplier) {
+        VectorSearchProperties.Flat flat = properties.getFlat();
+        VectorSegment segment = getOrOpen(tenantId);
+        VectorQuantizer.Mode quantization = mode != null ? mode : flat.getQuantization();
+        int multiplier = rescoreMultiplier != null ? rescoreMultiplier : flat.getRescoreMultiplier();
+        List<float[]> queries = segment.sampleVectors(samples);
+
+        long quantizedNanos = 0;
+        long exactNanos = 0;
+        long found = 0;
+        long expected = 0;
+        for (float[] query : queries) {
+            long start = System.nanoTime();
+            List<VectorHit> approximate = segment.search(query, topK, scanPool, flat.getScanChunkRows(), quantization, multiplier);
+            quantizedNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<VectorHit> exact = segment.search(query, topK, scanPool, flat.getScanChunkRows(), VectorQuantizer.Mode.NONE, 1);
+            exactNanos += System.nanoTime() - start;
+
+            Set<String> exactKeys = new HashSet<>();
+            exact.forEach(h -> exactKeys.add(h.fileId() + '#' + h.pageId()));
+            expected += exactKeys.size();
+            found += approximate.stream().filter(h -> exactKeys.contains(h.fileId() + '#' + h.pageId())).count();
+        }
+
+        int queryCount = Math.max(queries.size(), 1);
+        Map<String, Object> report = new HashMap<>();
+        report.put("vectors", segment.liveCount());
+        report.put("queries", queries.size());
+        report.put("top_k", topK);
+        report.put("quantization", quantization);
+        report.put("rescore_multiplier", multiplier);
+        report.put("recall", expected == 0 ? 1.0 : (double) found / expected);
+        report.put("avg_quantized_micros", quantizedNanos / 1000 / queryCount);
+        report.put("avg_exact_micros", exactNanos / 1000 / queryCount);
+        log.info("Flat segment recall - tenantId={}, report={}", tenantId, report);
+        return report;
+    }
+
+    public void onPageEmbedded(Long tenantId, String fileId, int pageId, float[] vector) {
+        if (!isEnabled()) return;
+
+        try {
+            VectorSegment segment = getOrOpen(tenantId);
+            if (segment.dimensions() != vector.length) {
+                // reopened at the new size, which rebuilds it from the table including this page
+                evict(tenantId, segments.get(tenantId));
+                return;
+            }
+            segment.append(fileId, pageId, vector);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to vector segment of tenant " + tenantId, e);
+        }
+    }
+
+    public void onPagesRemoved(Long tenantId, String fileId, Collection<Integer> pageIds) {
+        if (!isEnabled()) return;
+
+        try {
+            getOrOpen(tenantId).removePages(fileId, pageIds);
+        } catch (IOException e) {
+            // as for deleted files, the rows stay live until the next rebuild and search skips them
+            log.error("Failed to tombstone pages in vector segment - tenantId={}, fileId={}, error={}",
+                    tenantId, fileId, e.getMessage(), e);
+        }
+    }
+
+    public void onFileDeleted(Long tenantId, String fileId) {
+        if (!isEnabled()) return;
+
+        try {
+            getOrOpen(tenantId).removeFile(fileId);
+        } catch (IOException e) {
+            // the rows stay live until the next rebuild; search results are joined with the table and skip them
+            log.error("Failed to tombstone file in vector segment - tenantId={}, fileId={}, error={}",
+                    tenantId, fileId, e.getMessage(), e);
+        }
+    }
+
+    private VectorSegment getOrOpen(Long tenantId) {
+        CompletableFuture<VectorSegment> segment = segments.get(tenantId);
+        if (segment == null) {
+            CompletableFuture<VectorSegment> created = new CompletableFuture<>();
+            segment = segments.putIfAbsent(tenantId, created);
+            if (segment == null) {
+                // this thread opens, concurrent callers for the same tenant wait on the future
+                segment = created;
+                try {
+                    created.complete(open(tenantId));
+                } catch (RuntimeException e) {
+                    segments.remove(tenantId, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        return segment.join();
+    }
+
+    private VectorSegment open(Long tenantId) {
+        Path directory = segmentDirectory(tenantId);
+        int dimensions = tenantConfigService.getEmbeddingDimensions(tenantId);
+
+        try {
+            try {
+                VectorSegment segment = VectorSegment.open(directory, dimensions);
+                try {
+                    int caughtUp = catchUp(tenantId, segment);
+                    long rows = embeddingRepository.countByTenantIdAndDimensions(tenantId, dimensions);
+                    if (segment.liveCount() == rows) {
+                        log.info("Opened vector segment - tenantId={}, vectors={}, tombstones={}, caughtUp={}",
+                                tenantId, rows, segment.deletedCount(), caughtUp);
+                        return segment;
+                    }
+                    log.info("Vector segment out of date, rebuilding - tenantId={}, segment={}, database={}",
+                            tenantId, segment.liveCount(), rows);
+                } catch (RuntimeException e) {
+                    segment.close();
+                    throw e;
+                }
+                segment.close();
+            } catch (IOException e) {
+                log.warn("Unreadable vector segment, rebuilding - tenantId={}, error={}", tenantId, e.getMessage());
+            }
+
+            VectorSegment segment = VectorSegment.create(directory, dimensions);
+            try {
+                rebuild(tenantId, segment);
+                segment.retrainQuantizationIfNeeded();
+            } catch (IOException | RuntimeException e) {
+                segment.close();
+                throw e;
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open vector segment of tenant " + tenantId, e);
+        }
+    }
+
+    private void rebuild(Long tenantId, VectorSegment segment) throws IOException {
+        long start = System.currentTimeMillis();
+        long[] watermark = {Long.MIN_VALUE};
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<PageVector> vectors = embeddingRepository.streamVectorsByTenantId(tenantId)) {
+                vectors.forEach(v -> {
+                    watermark[0] = Math.max(watermark[0], epochMillis(v));
+                    float[] vector = v.getEmbeddings();
+                    if (vector == null || vector.length != segment.dimensions()) {
+                        // embedded before the tenant's size changed, left out until the file is re-embedded
+                        return;
+                    }
+                    try {
+                        // rows written before ingest normalization are not unit length
+                        segment.append(v.getFileId(), v.getPageId(), VectorMath.normalize(vector));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e.getMessage(), e);
+                    }
+                });
+            }
+        });
+        segment.advanceWatermark(watermark[0]);
+        log.info("Rebuilt vector segment - tenantId={}, dimensions={}, vectors={}, took={} ms", tenantId,
+                segment.dimensions(), segment.liveCount(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Appends the tenant's rows modified after the segment watermark (less the overlap) and moves the watermark
+     * to the newest of them. Rows the segment already holds unchanged are skipped by the segment itself.
+     */
+    private int catchUp(Long tenantId, VectorSegment segment) throws IOException {
+        long watermark = segment.watermark();
+        OffsetDateTime since = watermark == Long.MIN_VALUE
+                ? OffsetDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC)
+                : OffsetDateTime.ofInstant(Instant.ofEpochMilli(watermark - properties.getSyncOverlapMs()), ZoneOffset.UTC);
+
+        List<PageVector> rows = embeddingRepository.findVectorsModifiedAfter(tenantId, since);
+        long latest = watermark;
+        int appended = 0;
+        for (PageVector v : rows) {
+            latest = Math.max(latest, epochMillis(v));
+            float[] vector = v.getEmbeddings();
+            if (vector == null || vector.length != segment.dimensions()) continue;
+            segment.append(v.getFileId(), v.getPageId(), VectorMath.normalize(vector));
+            appended++;
+        }
+        segment.advanceWatermark(latest);
+        return appended;
+    }
+
+    @Scheduled(fixedDelayString = "${file.repository.vector.sync-interval-ms:30000}")
+    public void syncOpenSegments() {
+        if (!isEnabled()) return;
+
+        segments.forEach((tenantId, future) -> {
+            if (!future.isDone() || future.isCompletedExceptionally()) return;
+            VectorSegment segment = future.join();
+            try {
+                catchUp(tenantId, segment);
+                long rows = embeddingRepository.countByTenantIdAndDimensions(tenantId, segment.dimensions());
+                if (rows == segment.liveCount()) {
+                    countMismatches.remove(tenantId);
+                } else if (countMismatches.merge(tenantId, 1, Integer::sum) >= 2) {
+                    // a page committed between the count and its onPageEmbedded call explains one mismatch,
+                    // two in a row mean rows deleted elsewhere; reopening rebuilds it
+                    log.info("Vector segment disagrees with the database, evicting - tenantId={}, segment={}, database={}",
+                            tenantId, segment.liveCount(), rows);
+                    evict(tenantId, future);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Vector segment sync failed - tenantId={}, error={}", tenantId, e.getMessage());
+            }
+        });
+    }
+
+    private static long epochMillis(PageVector v) {
+        return v.getModifiedAt() != null ? v.getModifiedAt().toInstant().toEpochMilli() : Long.MIN_VALUE;
+    }
+
+    @Scheduled(fixedDelayString = "${file.repository.vector.flat.compaction-interval-ms:300000}")
+    public void compactSegments() {
+        if (!isEnabled()) return;
+
+        segments.forEach((tenantId, future) -> {
+            if (!future.isDone() || future.isCompletedExceptionally()) return;
+            VectorSegment segment = future.join();
+
+            int deleted = segment.deletedCount();
+            int total = segment.liveCount() + deleted;
+            long start = System.currentTimeMillis();
+            try {
+                if (total > 0 && (double) deleted / total > properties.getFlat().getCompactDeletedRatio()) {
+                    segment.compact();
+                    log.info("Compacted vector segment - tenantId={}, removed={}, kept={}, took={} ms",
+                            tenantId, deleted, segment.liveCount(), System.currentTimeMillis() - start);
+                }
+                // quantization parameters follow the tenant's data as it grows
+                if (segment.retrainQuantizationIfNeeded()) {
+                    log.info("Refit vector quantization - tenantId={}, vectors={}", tenantId, segment.liveCount());
+                }
+            } catch (IOException e) {
+                log.error("Vector segment maintenance failed - tenantId={}, error={}", tenantId, e.getMessage(), e);
+            }
+        });
+    }
+
+    private void evict(Long tenantId, CompletableFuture<VectorSegment> segment) {
+        if (segment != null && segments.remove(tenantId, segment)) {
+            countMismatches.remove(tenantId);
+            try {
+                segment.join().close();
+            } catch (IOException e) {
+                log.warn("Failed to close vector segment - tenantId={}, error={}", tenantId, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        segments.forEach((tenantId, future) -> {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                try {
+                    future.join().close();
+                } catch (IOException e) {
+                    log.warn("Failed to close vector segment - tenantId={}, error={}", tenantId, e.getMessage());
+                }
+            }
+        });
+        if (scanPool != ForkJoinPool.commonPool()) {
+            scanPool.shutdown();
+        }
+    }
+
+    private Path segmentDirectory(Long tenantId) {
+        return Paths.get(properties.getFlat().getSegmentPath()).resolve(String.valueOf(tenantId));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.file_repository_service.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Conversions between embedding vectors ({@code float[]}) and their stored forms.
+ * <ul>
+ *     <li>binary: little-endian float32, 4 bytes per dimension, no header</li>
+ *     <li>pgvector text literal: {@code [0.1,0.2,...]}, used to bind vectors through JDBC</li>
+ * </ul>
+ * Nothing here boxes values, decoding allocates the result array only.
+ */
+public final class EmbeddingCodec {
+
+    private EmbeddingCodec() {
+    }
+
+    public static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    public static float[] decode(byte[] bytes) {
+        if (bytes.length % Float.BYTES != 0) {
+            throw new IllegalArgumentException("Encoded vector length " + bytes.length + " is not a multiple of 4");
+        }
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    public static String toVectorLiteral(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 12 + 2);
+        sb.append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    public static float[] parseVectorLiteral(String literal) {
+        int start = literal.indexOf('[');
+        int end = literal.lastIndexOf(']');
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Not a vector literal: " + literal);
+        }
+
+        int dimensions = 0;
+        boolean empty = true;
+        for (int i = start + 1; i < end; i++) {
+            char c = literal.charAt(i);
+            if (c == ',') dimensions++;
+            else if (!Character.isWhitespace(c)) empty = false;
+        }
+        if (empty) return new float[0];
+
+        float[] vector = new float[dimensions + 1];
+        int from = start + 1;
+        for (int d = 0; d < vector.length; d++) {
+            int to = d < dimensions ? literal.indexOf(',', from) : end;
+            vector[d] = Float.parseFloat(literal.substring(from, to).trim());
+            from = to + 1;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.file_repository_service.util;
+
+import com.example.file_repository_service.exception.InvalidFileException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor for file listings, encodes the (createdAt, id) of the last row returned.
+ */
+public record FileCursor(OffsetDateTime createdAt, String id) {
+
+    private static final String SEPARATOR = "|";
+
+    public String encode() {
+        String raw = createdAt.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FileCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int idx = raw.indexOf(SEPARATOR);
+            if (idx <= 0 || idx == raw.length() - 1) {
+                throw new InvalidFileException("Invalid cursor: " + cursor);
+            }
+            return new FileCursor(OffsetDateTime.parse(raw.substring(0, idx)), raw.substring(idx + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidFileException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -2,12 +2,12 @@ package com.example.file_repository_service.util;
 
 import com.example.file_repository_service.entity.TenantConfig;
 import com.example.file_repository_service.exception.InvalidFileException;
-import org.apache.tika.Tika;
 import org.springframework.stereotype.Component;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -15,35 +15,57 @@ import java.util.Map;
 @Component
 public class FileValidator {
 
-    private final Tika tika = new Tika();
+    // shared with the rest of the service, Tika's MIME repository is loaded once
+    private final MediaTypeDetector mediaTypeDetector;
 
-    public void validateFile(MultipartFile file, TenantConfig tenantConfig)
+    public FileValidator(MediaTypeDetector mediaTypeDetector) {
+        this.mediaTypeDetector = mediaTypeDetector;
+    }
+
+    // returns the detected MIME type, which is what gets stored for the file
+    public String validateFile(MultipartFile file, TenantConfig tenantConfig)
     {
-        Map<String, Object> config = tenantConfig.getConfig();
         String tenantCode = tenantConfig.getTenantCode();
 
         log.debug("Validating file - tenantCode={}, fileName={}, size={} bytes",
                 tenantCode, file.getOriginalFilename(), file.getSize());
 
-        Integer maxFileSizeKBytes = (Integer) config.getOrDefault("maxFileSizeKBytes", 2048);
-        long maxBytes = maxFileSizeKBytes * 1024L;
-
-        if (file.getSize() > maxBytes) {
-            log.warn("File too large - size={} bytes, max={} bytes", file.getSize(), maxBytes);
-            throw new InvalidFileException("File size exceeds the limit of " + maxFileSizeKBytes + " KB");
-        }
-
+        validateSize(file.getSize(), tenantConfig);
 
         String originalName = file.getOriginalFilename();
         String detectedMimeType;
 
-        try {
-            detectedMimeType = tika.detect(file.getInputStream(), originalName);
+        try (InputStream content = file.getInputStream()) {
+            detectedMimeType = mediaTypeDetector.detectMimeType(content, originalName);
         } catch (IOException e) {
             log.error("MIME detection failed for file {}: {}", originalName, e.getMessage());
             throw new InvalidFileException("Failed to detect MIME type for file: " + originalName);
         }
 
+        validateMimeType(detectedMimeType, tenantConfig);
+        validateExtension(originalName, tenantConfig);
+
+        log.debug("Validation passed - tenantCode={}, fileName={}, mimeType={}", tenantCode, originalName, detectedMimeType);
+        return detectedMimeType;
+    }
+
+    public long maxBytes(TenantConfig tenantConfig) {
+        Integer maxFileSizeKBytes = (Integer) tenantConfig.getConfig().getOrDefault("maxFileSizeKBytes", 2048);
+        return maxFileSizeKBytes * 1024L;
+    }
+
+    public void validateSize(long sizeBytes, TenantConfig tenantConfig) {
+        long maxBytes = maxBytes(tenantConfig);
+        if (sizeBytes > maxBytes) {
+            log.warn("File too large - size={} bytes, max={} bytes", sizeBytes, maxBytes);
+            throw new InvalidFileException("File size exceeds the limit of " + maxBytes / 1024 + " KB");
+        }
+    }
+
+    public void validateMimeType(String detectedMimeType, TenantConfig tenantConfig) {
+        Map<String, Object> config = tenantConfig.getConfig();
+        String tenantCode = tenantConfig.getTenantCode();
+
         List<String> allowedMime = (List<String>) config.getOrDefault("allowedMimeTypes", List.of());
         List<String> forbiddenMime = (List<String>) config.getOrDefault("forbiddenMimeTypes", List.of());
 
@@ -55,8 +77,11 @@ public class FileValidator {
             log.warn("MIME type forbidden - detected={}, tenant={}", detectedMimeType, tenantCode);
             throw new InvalidFileException("Detected MIME type '" + detectedMimeType + "' is forbidden for tenant " + tenantCode);
         }
+    }
 
-
+    public void validateExtension(String originalName, TenantConfig tenantConfig) {
+        Map<String, Object> config = tenantConfig.getConfig();
+        String tenantCode = tenantConfig.getTenantCode();
 
         String extension = "";
         if (originalName != null && originalName.contains(".")) {
@@ -74,8 +99,5 @@ public class FileValidator {
             log.warn("Extension forbidden - ext={}, tenant={}", extension, tenantCode);
             throw new InvalidFileException("Extension '" + extension + "' is forbidden for tenant " + tenantCode);
         }
-
-
-        log.debug("Validation passed - tenantCode={}, fileName={}", tenantCode, originalName);
     }
-}
\ No newline at end of file
+}
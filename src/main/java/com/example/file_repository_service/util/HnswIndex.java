@@ -0,0 +1,539 @@
+package com.example.file_repository_service.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory HNSW (hierarchical navigable small world) graph over L2-normalized vectors,
+ * scored by dot product (= cosine similarity). One instance holds the pages of one tenant.
+ * <p>
+ * Writers are serialized, searches run concurrently under a read lock.
+ * Replaced or deleted pages are tombstoned: they still route searches but are never returned.
+ */
+public final class HnswIndex {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 2;
+    // a page re-added with (numerically) the same vector keeps its node instead of leaving a tombstone
+    private static final float SAME_VECTOR_SIMILARITY = 1 - 1e-6f;
+    private static final int[] NO_LINKS = new int[0];
+
+    private final int dimensions;
+    private final int m;
+    private final int maxLinksLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[][] vectors = new float[64][];
+    // links[node][level] holds the neighbour node ids of node on that level
+    private int[][][] links = new int[64][][];
+    private String[] fileIds = new String[64];
+    private int[] pageIds = new int[64];
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> nodeByPage = new HashMap<>();
+    private final Map<String, List<Integer>> nodesByFile = new HashMap<>();
+
+    private int size;
+    private int liveCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private volatile long version;
+    // opaque to the index: how far its owner has synced it with the source of the vectors
+    private long watermark = Long.MIN_VALUE;
+
+    public HnswIndex(int dimensions, int m, int efConstruction) {
+        if (m < 2) {
+            throw new IllegalArgumentException("m must be at least 2");
+        }
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxLinksLevel0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    /**
+     * Adds (or replaces) the vector of a page. The vector must already be normalized. Adding the vector a page
+     * already has is a no-op, so re-reading overlapping source rows does not grow the graph.
+     */
+    public void add(String fileId, int pageId, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+
+        lock.writeLock().lock();
+        try {
+            String key = pageKey(fileId, pageId);
+            Integer previous = nodeByPage.get(key);
+            if (previous != null && !deleted.get(previous)) {
+                if (VectorMath.dot(vectors[previous], vector) >= SAME_VECTOR_SIMILARITY) return;
+                deleted.set(previous);
+                liveCount--;
+            }
+
+            int node = size;
+            ensureCapacity(node + 1);
+            int level = randomLevel();
+            vectors[node] = vector;
+            fileIds[node] = fileId;
+            pageIds[node] = pageId;
+            links[node] = new int[level + 1][];
+            Arrays.fill(links[node], NO_LINKS);
+            size++;
+            liveCount++;
+            nodeByPage.put(key, node);
+            nodesByFile.computeIfAbsent(fileId, f -> new ArrayList<>()).add(node);
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+            } else {
+                int ep = entryPoint;
+                for (int l = maxLevel; l > level; l--) {
+                    ep = greedyClosest(vector, ep, l);
+                }
+                for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                    TopKSelector.Result candidates = searchLayer(vector, ep, efConstruction, l);
+                    int[] neighbours = selectNeighbours(candidates.ids(), candidates.scores(), m);
+                    links[node][l] = neighbours;
+                    for (int neighbour : neighbours) {
+                        connect(neighbour, node, l);
+                    }
+                    ep = (int) candidates.ids()[0];
+                }
+                if (level > maxLevel) {
+                    entryPoint = node;
+                    maxLevel = level;
+                }
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removePages(String fileId, Collection<Integer> pageIds) {
+        lock.writeLock().lock();
+        try {
+            List<Integer> nodes = nodesByFile.get(fileId);
+            if (nodes == null) return;
+            for (int pageId : pageIds) {
+                Integer node = nodeByPage.remove(pageKey(fileId, pageId));
+                if (node != null && !deleted.get(node)) {
+                    deleted.set(node);
+                    liveCount--;
+                }
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFile(String fileId) {
+        lock.writeLock().lock();
+        try {
+            List<Integer> nodes = nodesByFile.remove(fileId);
+            if (nodes == null) return;
+            for (int node : nodes) {
+                if (!deleted.get(node)) {
+                    deleted.set(node);
+                    liveCount--;
+                }
+                nodeByPage.remove(pageKey(fileId, pageIds[node]));
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate top-k. Larger efSearch explores more of the graph: better recall, higher latency.
+     */
+    public List<VectorHit> search(float[] query, int k, int efSearch) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) return List.of();
+
+            int ep = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                ep = greedyClosest(query, ep, l);
+            }
+            // tombstoned nodes take result slots during the walk, widen the beam to compensate
+            int ef = Math.max(efSearch, k) + (size - liveCount > 0 ? k : 0);
+            TopKSelector.Result result = searchLayer(query, ep, ef, 0);
+
+            List<VectorHit> hits = new ArrayList<>(k);
+            for (int i = 0; i < result.size() && hits.size() < k; i++) {
+                int node = (int) result.ids()[i];
+                if (!deleted.get(node)) {
+                    hits.add(new VectorHit(fileIds[node], pageIds[node], result.scores()[i]));
+                }
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Brute-force top-k over every live node, the reference for recall measurements.
+     */
+    public List<VectorHit> exactSearch(float[] query, int k) {
+        lock.readLock().lock();
+        try {
+            TopKSelector selector = new TopKSelector(k);
+            for (int node = 0; node < size; node++) {
+                if (!deleted.get(node)) {
+                    selector.offer(node, VectorMath.dot(query, vectors[node]));
+                }
+            }
+            TopKSelector.Result result = selector.drain();
+            List<VectorHit> hits = new ArrayList<>(result.size());
+            for (int i = 0; i < result.size(); i++) {
+                int node = (int) result.ids()[i];
+                hits.add(new VectorHit(fileIds[node], pageIds[node], result.scores()[i]));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies of up to {@code count} live vectors, spread evenly over the index (used as recall probes).
+     */
+    public List<float[]> sampleVectors(int count) {
+        lock.readLock().lock();
+        try {
+            List<float[]> samples = new ArrayList<>(count);
+            int step = Math.max(1, size / Math.max(count, 1));
+            for (int node = 0; node < size && samples.size() < count; node += step) {
+                if (!deleted.get(node)) {
+                    samples.add(vectors[node].clone());
+                }
+            }
+            return samples;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public int liveCount() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return size - liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // bumped by every modification, lets callers tell whether a snapshot is out of date
+    public long version() {
+        return version;
+    }
+
+    public long watermark() {
+        lock.readLock().lock();
+        try {
+            return watermark;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // never moves backwards; written with the snapshot, so a snapshot holds every source row up to its watermark
+    public void advanceWatermark(long value) {
+        lock.writeLock().lock();
+        try {
+            if (value > watermark) {
+                watermark = value;
+                version++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int greedyClosest(float[] query, int ep, int level) {
+        float best = VectorMath.dot(query, vectors[ep]);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbour : links[ep][level]) {
+                float score = VectorMath.dot(query, vectors[neighbour]);
+                if (score > best) {
+                    best = score;
+                    ep = neighbour;
+                    changed = true;
+                }
+            }
+        }
+        return ep;
+    }
+
+    // beam search on one level, returns up to ef nodes best first
+    private TopKSelector.Result searchLayer(float[] query, int ep, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        CandidateHeap candidates = new CandidateHeap();
+        TopKSelector results = new TopKSelector(ef);
+
+        float epScore = VectorMath.dot(query, vectors[ep]);
+        visited.set(ep);
+        candidates.push(ep, epScore);
+        results.offer(ep, epScore);
+
+        while (candidates.size() > 0) {
+            float score = candidates.peekScore();
+            if (score < results.threshold()) break;
+            int current = candidates.pop();
+
+            for (int neighbour : links[current][level]) {
+                if (visited.get(neighbour)) continue;
+                visited.set(neighbour);
+
+                float neighbourScore = VectorMath.dot(query, vectors[neighbour]);
+                if (results.size() < ef || neighbourScore > results.threshold()) {
+                    candidates.push(neighbour, neighbourScore);
+                    results.offer(neighbour, neighbourScore);
+                }
+            }
+        }
+        return results.drain();
+    }
+
+    /**
+     * HNSW neighbour selection heuristic: a candidate is kept only if it is closer to the base
+     * than to every neighbour kept so far, which spreads links in different directions.
+     * Remaining slots are filled with the best pruned candidates.
+     */
+    private int[] selectNeighbours(long[] candidates, float[] scores, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        int count = 0;
+        boolean[] used = new boolean[candidates.length];
+
+        for (int i = 0; i < candidates.length && count < selected.length; i++) {
+            int candidate = (int) candidates[i];
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (VectorMath.dot(vectors[candidate], vectors[selected[j]]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+                used[i] = true;
+            }
+        }
+        for (int i = 0; i < candidates.length && count < selected.length; i++) {
+            if (!used[i]) {
+                selected[count++] = (int) candidates[i];
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int node, int newNeighbour, int level) {
+        int[] current = links[node][level];
+        int maxLinks = level == 0 ? maxLinksLevel0 : m;
+
+        int[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = newNeighbour;
+        if (grown.length <= maxLinks) {
+            links[node][level] = grown;
+            return;
+        }
+
+        // over capacity, re-select the best maxLinks neighbours of node
+        TopKSelector selector = new TopKSelector(grown.length);
+        for (int neighbour : grown) {
+            selector.offer(neighbour, VectorMath.dot(vectors[node], vectors[neighbour]));
+        }
+        TopKSelector.Result ranked = selector.drain();
+        links[node][level] = selectNeighbours(ranked.ids(), ranked.scores(), maxLinks);
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= vectors.length) return;
+        int newCapacity = Math.max(capacity, vectors.length * 2);
+        vectors = Arrays.copyOf(vectors, newCapacity);
+        links = Arrays.copyOf(links, newCapacity);
+        fileIds = Arrays.copyOf(fileIds, newCapacity);
+        pageIds = Arrays.copyOf(pageIds, newCapacity);
+    }
+
+    private static String pageKey(String fileId, int pageId) {
+        return fileId + '#' + pageId;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            out.writeLong(watermark);
+
+            for (int node = 0; node < size; node++) {
+                out.writeUTF(fileIds[node]);
+                out.writeInt(pageIds[node]);
+                out.writeBoolean(deleted.get(node));
+                for (float value : vectors[node]) {
+                    out.writeFloat(value);
+                }
+                out.writeInt(links[node].length);
+                for (int[] levelLinks : links[node]) {
+                    out.writeInt(levelLinks.length);
+                    for (int neighbour : levelLinks) {
+                        out.writeInt(neighbour);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static HnswIndex readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an HNSW snapshot");
+        }
+        int version = in.readInt();
+        // version 1 snapshots carry no watermark, their owner syncs them from scratch
+        if (version != VERSION && version != 1) {
+            throw new IOException("Unsupported HNSW snapshot version " + version);
+        }
+
+        HnswIndex index = new HnswIndex(in.readInt(), in.readInt(), in.readInt());
+        int size = in.readInt();
+        index.ensureCapacity(size);
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        if (version >= 2) {
+            index.watermark = in.readLong();
+        }
+
+        for (int node = 0; node < size; node++) {
+            String fileId = in.readUTF();
+            int pageId = in.readInt();
+            boolean isDeleted = in.readBoolean();
+            float[] vector = new float[index.dimensions];
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] = in.readFloat();
+            }
+            int[][] nodeLinks = new int[in.readInt()][];
+            for (int l = 0; l < nodeLinks.length; l++) {
+                nodeLinks[l] = new int[in.readInt()];
+                for (int j = 0; j < nodeLinks[l].length; j++) {
+                    nodeLinks[l][j] = in.readInt();
+                }
+            }
+
+            index.vectors[node] = vector;
+            index.links[node] = nodeLinks;
+            index.fileIds[node] = fileId;
+            index.pageIds[node] = pageId;
+            if (isDeleted) {
+                index.deleted.set(node);
+            } else {
+                index.liveCount++;
+                index.nodeByPage.put(pageKey(fileId, pageId), node);
+                index.nodesByFile.computeIfAbsent(fileId, f -> new ArrayList<>()).add(node);
+            }
+        }
+        index.size = size;
+        return index;
+    }
+
+    /**
+     * Unbounded primitive max-heap of (node, score), the HNSW candidate queue.
+     */
+    private static final class CandidateHeap {
+        private int[] nodes = new int[64];
+        private float[] scores = new float[64];
+        private int size;
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] >= score) break;
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            if (size > 0) {
+                int node = nodes[size];
+                float score = scores[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && scores[child + 1] > scores[child]) child++;
+                    if (score >= scores[child]) break;
+                    nodes[i] = nodes[child];
+                    scores[i] = scores[child];
+                    i = child;
+                }
+                nodes[i] = node;
+                scores[i] = score;
+            }
+            return top;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.apache.tika.Tika;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 
 @Component
@@ -23,6 +24,20 @@ public class MediaTypeDetector {
         }
     }
 
+    // content sniffing, with the file name as a hint when the magic bytes are ambiguous
+    public String detectMimeType(InputStream content, String fileName) throws IOException {
+        return tika.detect(content, fileName);
+    }
+
+    // leading bytes of a file plus its name
+    public String detectMimeType(byte[] head, String fileName) {
+        try {
+            return tika.detect(head, fileName);
+        } catch (Exception e) {
+            return "application/octet-stream";
+        }
+    }
+
     public String detectMimeType(byte[] content) {
         try {
             return tika.detect(content);
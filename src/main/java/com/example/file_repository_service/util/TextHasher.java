@@ -0,0 +1,39 @@
+package com.example.file_repository_service.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Content hashes of extracted text. Texts that only differ in Unicode form or whitespace hash the same,
+ * which is what PDF extraction of the same page tends to produce.
+ */
+public final class TextHasher {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private TextHasher() {
+    }
+
+    public static String normalize(String text) {
+        String composed = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(composed).replaceAll(" ").trim();
+    }
+
+    // hex SHA-256 of the normalized text
+    public static String sha256(String text) {
+        return HexFormat.of().formatHex(newDigest().digest(normalize(text).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE is required to ship SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
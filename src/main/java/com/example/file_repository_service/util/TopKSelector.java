@@ -0,0 +1,109 @@
+package com.example.file_repository_service.util;
+
+/**
+ * Keeps the k highest scoring ids using a primitive binary min-heap, so the worst kept
+ * score is always at the root and each offer is O(log k) without boxing.
+ * Not thread-safe, use one selector per thread and {@link #merge} the results.
+ */
+public final class TopKSelector {
+
+    private final int k;
+    private final long[] ids;
+    private final float[] scores;
+    private int size;
+
+    public TopKSelector(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        this.ids = new long[k];
+        this.scores = new float[k];
+    }
+
+    public void offer(long id, float score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Lowest score that would still be accepted, or -infinity while the heap is not full.
+     */
+    public float threshold() {
+        return size < k ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void merge(TopKSelector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * Drains the heap, best result first. The selector is empty afterwards.
+     */
+    public Result drain() {
+        int n = size;
+        long[] outIds = new long[n];
+        float[] outScores = new float[n];
+        for (int i = n - 1; i >= 0; i--) {
+            outIds[i] = ids[0];
+            outScores[i] = scores[0];
+            size--;
+            if (size > 0) {
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        return new Result(outIds, outScores);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[i] >= scores[parent]) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && scores[right] < scores[left]) smallest = right;
+            if (scores[i] <= scores[smallest]) break;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    public record Result(long[] ids, float[] scores) {
+        public int size() {
+            return ids.length;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.file_repository_service.util;
+
+/**
+ * One page returned by an in-process vector search, score is the cosine similarity.
+ */
+public record VectorHit(String fileId, int pageId, float score) {
+}
@@ -0,0 +1,88 @@
+package com.example.file_repository_service.util;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Similarity kernels for embedding vectors.
+ * Vectors are L2-normalized once at ingest, so cosine similarity is a single dot product.
+ * Uses the incubating Vector API when the JVM runs with {@code --add-modules jdk.incubator.vector},
+ * otherwise falls back to a scalar loop the JIT can still unroll.
+ */
+@Log4j2
+public final class VectorMath {
+
+    // -Dfile.repository.vector.simd=false forces the scalar kernel
+    static final boolean SIMD_ENABLED = Boolean.parseBoolean(System.getProperty("file.repository.vector.simd", "true"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    static {
+        log.info("Vector similarity kernel: {}", SIMD_ENABLED ? "SIMD (jdk.incubator.vector)" : "scalar");
+    }
+
+    private VectorMath() {
+    }
+
+    public static float dot(float[] a, float[] b) {
+        return dot(a, b, Math.min(a.length, b.length));
+    }
+
+    // dot product of the first 'length' dimensions
+    public static float dot(float[] a, float[] b, int length) {
+        return SIMD_ENABLED ? SimdVectorMath.dot(a, b, length) : scalarDot(a, b, length);
+    }
+
+    // integer dot product of int8 quantized vectors
+    public static int dot(byte[] a, byte[] b) {
+        return dot(a, b, Math.min(a.length, b.length), SIMD_ENABLED && SimdVectorMath.INT8_SUPPORTED);
+    }
+
+    // scalar when the species is too narrow for widened int8 lanes; tests pick the kernel directly
+    static int dot(byte[] a, byte[] b, int length, boolean simd) {
+        return simd ? SimdVectorMath.dot(a, b, length) : scalarDot(a, b, length);
+    }
+
+    /**
+     * Cosine similarity of two L2-normalized vectors.
+     */
+    public static float cosine(float[] a, float[] b) {
+        return dot(a, b);
+    }
+
+    /**
+     * L2-normalizes the vector in place and returns it, zero vectors are left untouched.
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        if (norm > 0) {
+            float inv = (float) (1.0 / norm);
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= inv;
+            }
+        }
+        return vector;
+    }
+
+    static float scalarDot(float[] a, float[] b, int length) {
+        // four independent accumulators break the add dependency chain
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static int scalarDot(byte[] a, byte[] b, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.file_repository_service.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Quantization parameters of one tenant's vectors and the int8 / binary codecs built on them.
+ * <ul>
+ *     <li>int8: rows {@code round((x - center) / scale * 127)} clamped, scored by integer dot product against the
+ *     query quantized without the centre (see {@link #quantizeInt8Query}); {@code q . (x - c) = q . x - q . c}
+ *     and {@code q . c} is the same for every row, so the ranking is that of {@code q . x}</li>
+ *     <li>binary: one bit per dimension, set when {@code x > center}, scored by negated Hamming distance</li>
+ * </ul>
+ * Both are coarse scores only, candidates are always rescored with the float vectors.
+ */
+public final class VectorQuantizer {
+
+    private static final int MAGIC = 0x56515450; // "VQTP"
+    private static final int VERSION = 1;
+    // share of component magnitudes left unclipped by the int8 scale
+    private static final double CLIP_QUANTILE = 0.999;
+
+    public enum Mode { NONE, INT8, BINARY }
+
+    private final long id;
+    private final int trainedRows;
+    private final float scale;
+    private final float[] center;
+
+    private VectorQuantizer(long id, int trainedRows, float scale, float[] center) {
+        this.id = id;
+        this.trainedRows = trainedRows;
+        this.scale = scale;
+        this.center = center;
+    }
+
+    /**
+     * Untrained parameters for unit vectors: centred on zero, clipped at four standard deviations.
+     */
+    public static VectorQuantizer defaults(int dimensions) {
+        return new VectorQuantizer(ThreadLocalRandom.current().nextLong(), 0,
+                (float) (4 / Math.sqrt(dimensions)), new float[dimensions]);
+    }
+
+    /**
+     * Fits the per-dimension centre (mean) and a shared int8 scale (a high quantile of |x - center|).
+     */
+    public static VectorQuantizer fit(List<float[]> sample, int dimensions) {
+        if (sample.isEmpty()) {
+            return defaults(dimensions);
+        }
+
+        float[] center = new float[dimensions];
+        for (float[] vector : sample) {
+            for (int d = 0; d < dimensions; d++) {
+                center[d] += vector[d];
+            }
+        }
+        for (int d = 0; d < dimensions; d++) {
+            center[d] /= sample.size();
+        }
+
+        // histogram of |x - center| over [0, 1], unit vectors never leave it
+        int buckets = 4096;
+        long[] histogram = new long[buckets];
+        for (float[] vector : sample) {
+            for (int d = 0; d < dimensions; d++) {
+                float magnitude = Math.abs(vector[d] - center[d]);
+                histogram[Math.min((int) (magnitude * buckets), buckets - 1)]++;
+            }
+        }
+        long target = (long) Math.ceil((double) sample.size() * dimensions * CLIP_QUANTILE);
+        long seen = 0;
+        int bucket = 0;
+        while (bucket < buckets - 1 && (seen += histogram[bucket]) < target) {
+            bucket++;
+        }
+        float scale = Math.max((bucket + 1) / (float) buckets, 1e-6f);
+
+        return new VectorQuantizer(ThreadLocalRandom.current().nextLong(), sample.size(), scale, center);
+    }
+
+    public void quantizeInt8(float[] vector, byte[] out) {
+        float factor = 127 / scale;
+        for (int d = 0; d < vector.length; d++) {
+            int q = Math.round((vector[d] - center[d]) * factor);
+            out[d] = (byte) Math.max(-127, Math.min(127, q));
+        }
+    }
+
+    /**
+     * Quantizes a query for scoring against int8 rows. Not centred: a centred query would add {@code -c . x},
+     * which differs per row and skews the ranking. Scaled by its own largest component, as only the order of
+     * the scores matters.
+     */
+    public static void quantizeInt8Query(float[] query, byte[] out) {
+        float max = 0;
+        for (float value : query) {
+            max = Math.max(max, Math.abs(value));
+        }
+        float factor = max > 0 ? 127 / max : 0;
+        for (int d = 0; d < query.length; d++) {
+            out[d] = (byte) Math.round(query[d] * factor);
+        }
+    }
+
+    public void quantizeBinary(float[] vector, long[] out) {
+        Arrays.fill(out, 0L);
+        for (int d = 0; d < vector.length; d++) {
+            if (vector[d] > center[d]) {
+                out[d >>> 6] |= 1L << (d & 63);
+            }
+        }
+    }
+
+    public static int hammingDistance(long[] a, long[] b) {
+        int distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            distance += Long.bitCount(a[i] ^ b[i]);
+        }
+        return distance;
+    }
+
+    public static int binaryWords(int dimensions) {
+        return (dimensions + 63) >>> 6;
+    }
+
+    // identifies the parameters the int8 / binary rows were written with
+    public long id() {
+        return id;
+    }
+
+    public int trainedRows() {
+        return trainedRows;
+    }
+
+    public int dimensions() {
+        return center.length;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(id);
+        out.writeInt(trainedRows);
+        out.writeFloat(scale);
+        out.writeInt(center.length);
+        for (float value : center) {
+            out.writeFloat(value);
+        }
+    }
+
+    public static VectorQuantizer readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a quantization parameter file (or unsupported version)");
+        }
+        long id = in.readLong();
+        int trainedRows = in.readInt();
+        float scale = in.readFloat();
+        float[] center = new float[in.readInt()];
+        for (int d = 0; d < center.length; d++) {
+            center[d] = in.readFloat();
+        }
+        return new VectorQuantizer(id, trainedRows, scale, center);
+    }
+}
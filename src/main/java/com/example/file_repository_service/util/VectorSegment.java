@@ -0,0 +1,882 @@
+package com.example.file_repository_service.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Append-only flat vector segment of one tenant, files in one directory:
+ * <ul>
+ *     <li>{@code vectors.f32}: header, then fixed-stride rows of little-endian float32 (see {@link EmbeddingCodec})</li>
+ *     <li>{@code vectors.i8} / {@code vectors.b1}: the same rows int8 and binary quantized (see {@link VectorQuantizer})</li>
+ *     <li>{@code quant.params}: the tenant's quantization parameters</li>
+ *     <li>{@code pages.idx}: header, then one 72 byte row per vector: file id (64 bytes, zero padded),
+ *     page id (int) and a tombstone flag</li>
+ *     <li>{@code sync.mark}: the owner's watermark, how far the segment is synced with its source</li>
+ *     <li>{@code writer.lock}: held (file lock) while the segment is open, a second process cannot open it</li>
+ * </ul>
+ * Vectors stay off-heap and are scanned through read-only {@link MappedByteBuffer}s, so an exact top-k
+ * is bounded by memory bandwidth; a quantized search scans the 4x / 32x smaller sidecar and rescores the
+ * best candidates with the float rows. Replaced and deleted pages are tombstoned and dropped by {@link #compact()}.
+ * Every header carries the segment id (and the sidecars the parameter id), files that do not belong together
+ * are detected on open: the float and page pair fails, the sidecars are regenerated.
+ */
+public final class VectorSegment implements AutoCloseable {
+
+    private static final int MAGIC = 0x56534547; // "VSEG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int FILE_ID_BYTES = 64;
+    private static final int ID_ROW_BYTES = 72;
+    private static final int TOMBSTONE_OFFSET = FILE_ID_BYTES + Integer.BYTES;
+    private static final String VECTORS_FILE = "vectors.f32";
+    private static final String INT8_FILE = "vectors.i8";
+    private static final String BINARY_FILE = "vectors.b1";
+    private static final String PAGES_FILE = "pages.idx";
+    private static final String PARAMS_FILE = "quant.params";
+    private static final String WATERMARK_FILE = "sync.mark";
+    private static final String LOCK_FILE = "writer.lock";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // quantization parameters are refit once the segment has at least this many rows, and again each time it doubles
+    private static final int MIN_TRAINING_ROWS = 1000;
+    private static final int MAX_TRAINING_SAMPLE = 10_000;
+    // a page appended again with (numerically) the same vector keeps its row instead of leaving a tombstone
+    private static final float SAME_VECTOR_SIMILARITY = 1 - 1e-6f;
+
+    private final Path directory;
+    private final int dimensions;
+    private final RowFile floatRows;
+    private final RowFile int8Rows;
+    private final RowFile binaryRows;
+
+    // serializes writers (append, tombstone, compaction, requantization); searches only need the read lock
+    private final ReentrantLock mutatorLock = new ReentrantLock();
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    private FileChannel pageChannel;
+    private FileChannel lockChannel;
+    private long segmentId;
+    private long watermark = Long.MIN_VALUE;
+    private VectorQuantizer quantizer;
+
+    private String[] fileIds = new String[1024];
+    private int[] pageIds = new int[1024];
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> rowByPage = new HashMap<>();
+    private final Map<String, List<Integer>> rowsByFile = new HashMap<>();
+    private int rows;
+    private int liveCount;
+
+    private VectorSegment(Path directory, int dimensions) {
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.floatRows = new RowFile(VECTORS_FILE, dimensions * Float.BYTES);
+        this.int8Rows = new RowFile(INT8_FILE, dimensions);
+        this.binaryRows = new RowFile(BINARY_FILE, VectorQuantizer.binaryWords(dimensions) * Long.BYTES);
+    }
+
+    /**
+     * Opens the segment in {@code directory}, creating empty files if there are none. Throws
+     * {@link IllegalStateException} when another process has it open.
+     */
+    public static VectorSegment open(Path directory, int dimensions) throws IOException {
+        return open(directory, dimensions, false);
+    }
+
+    /**
+     * Opens an empty segment in {@code directory}, removing whatever segment was there (used for a rebuild).
+     * The old files are only removed once this process holds the directory's writer lock.
+     */
+    public static VectorSegment create(Path directory, int dimensions) throws IOException {
+        return open(directory, dimensions, true);
+    }
+
+    private static VectorSegment open(Path directory, int dimensions, boolean empty) throws IOException {
+        Files.createDirectories(directory);
+        VectorSegment segment = new VectorSegment(directory, dimensions);
+        segment.lockDirectory();
+        try {
+            if (empty) {
+                for (String name : new String[]{VECTORS_FILE, INT8_FILE, BINARY_FILE, PAGES_FILE, PARAMS_FILE, WATERMARK_FILE}) {
+                    Files.deleteIfExists(directory.resolve(name));
+                }
+            }
+            Path vectors = directory.resolve(VECTORS_FILE);
+            Path pages = directory.resolve(PAGES_FILE);
+            if (!Files.exists(vectors) || !Files.exists(pages)) {
+                long segmentId = ThreadLocalRandom.current().nextLong();
+                segment.writeEmptyFile(vectors, segmentId, 0);
+                segment.writeEmptyFile(pages, segmentId, 0);
+            }
+            segment.openFiles();
+            segment.watermark = segment.readWatermark();
+        } catch (IOException | RuntimeException e) {
+            segment.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    public void append(String fileId, int pageId, float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        byte[] fileIdBytes = fileId.getBytes(StandardCharsets.UTF_8);
+        if (fileIdBytes.length > FILE_ID_BYTES) {
+            throw new IllegalArgumentException("File id longer than " + FILE_ID_BYTES + " bytes: " + fileId);
+        }
+
+        mutatorLock.lock();
+        try {
+            Integer existing = rowByPage.get(pageKey(fileId, pageId));
+            if (existing != null && VectorMath.dot(readVector(existing), vector) >= SAME_VECTOR_SIMILARITY) return;
+
+            int row = rows;
+            // the vector rows go first: a page row is only counted once all of its vectors are complete
+            floatRows.write(ByteBuffer.wrap(EmbeddingCodec.encode(vector)), row);
+            int8Rows.write(quantizeInt8(quantizer, vector), row);
+            binaryRows.write(quantizeBinary(quantizer, vector), row);
+            ByteBuffer idRow = ByteBuffer.allocate(ID_ROW_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            idRow.put(fileIdBytes).putInt(FILE_ID_BYTES, pageId).clear();
+            writeFully(pageChannel, idRow, pageOffset(row));
+
+            stateLock.writeLock().lock();
+            try {
+                Integer previous = rowByPage.get(pageKey(fileId, pageId));
+                if (previous != null) {
+                    tombstone(previous);
+                }
+                register(row, fileId, pageId);
+                rows++;
+                liveCount++;
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+        } finally {
+            mutatorLock.unlock();
+        }
+    }
+
+    public void removePages(String fileId, Collection<Integer> pageIds) throws IOException {
+        mutatorLock.lock();
+        try {
+            stateLock.writeLock().lock();
+            try {
+                for (int pageId : pageIds) {
+                    Integer row = rowByPage.remove(pageKey(fileId, pageId));
+                    if (row != null) {
+                        tombstone(row);
+                    }
+                }
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+        } finally {
+            mutatorLock.unlock();
+        }
+    }
+
+    public void removeFile(String fileId) throws IOException {
+        mutatorLock.lock();
+        try {
+            stateLock.writeLock().lock();
+            try {
+                List<Integer> fileRows = rowsByFile.remove(fileId);
+                if (fileRows == null) return;
+                for (int row : fileRows) {
+                    rowByPage.remove(pageKey(fileId, pageIds[row]));
+                    tombstone(row);
+                }
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+        } finally {
+            mutatorLock.unlock();
+        }
+    }
+
+    /**
+     * Top-k by dot product, split into row ranges of {@code chunkRows} scanned in parallel on {@code pool}.
+     * With {@code NONE} the float rows are scanned (exact). Otherwise the quantized rows are scanned for
+     * {@code k * rescoreMultiplier} candidates, which are then rescored with their float rows.
+     */
+    public List<VectorHit> search(float[] query, int k, ForkJoinPool pool, int chunkRows,
+                                  VectorQuantizer.Mode mode, int rescoreMultiplier) {
+        stateLock.readLock().lock();
+        try {
+            if (liveCount == 0) return List.of();
+            int count = rows;
+            int chunk = Math.max(chunkRows, 1);
+
+            TopKSelector.Result result;
+            if (mode == VectorQuantizer.Mode.NONE) {
+                result = pool.invoke(new ScanTask(floatScorer(query, count), k, 0, count, chunk)).drain();
+            } else {
+                int candidates = Math.min(k * Math.max(rescoreMultiplier, 1), liveCount);
+                Supplier<RowScorer> coarse = mode == VectorQuantizer.Mode.INT8
+                        ? int8Scorer(query, count) : binaryScorer(query, count);
+                TopKSelector.Result shortlist = pool.invoke(new ScanTask(coarse, candidates, 0, count, chunk)).drain();
+
+                RowScorer exact = floatScorer(query, count).get();
+                TopKSelector rescored = new TopKSelector(k);
+                for (long row : shortlist.ids()) {
+                    rescored.offer(row, exact.score((int) row));
+                }
+                result = rescored.drain();
+            }
+
+            List<VectorHit> hits = new ArrayList<>(result.size());
+            for (int i = 0; i < result.size(); i++) {
+                int row = (int) result.ids()[i];
+                hits.add(new VectorHit(fileIds[row], pageIds[row], result.scores()[i]));
+            }
+            return hits;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies of up to {@code count} live vectors, spread evenly over the segment.
+     */
+    public List<float[]> sampleVectors(int count) {
+        stateLock.readLock().lock();
+        try {
+            List<float[]> samples = new ArrayList<>(Math.min(count, liveCount));
+            FloatBuffer[] views = floatViews(rows);
+            int step = Math.max(1, rows / Math.max(count, 1));
+            for (int row = 0; row < rows && samples.size() < count; row += step) {
+                if (deleted.get(row)) continue;
+                float[] vector = new float[dimensions];
+                views[row / floatRows.rowsPerMap].get((row % floatRows.rowsPerMap) * dimensions, vector);
+                samples.add(vector);
+            }
+            return samples;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the segment without tombstoned rows. Writers wait for the copy, searches keep running
+     * against the old files until the new set is swapped in. Quantized rows are copied as they are.
+     */
+    public void compact() throws IOException {
+        mutatorLock.lock();
+        try {
+            int total;
+            stateLock.readLock().lock();
+            try {
+                if (deleted.isEmpty()) return;
+                total = rows;
+            } finally {
+                stateLock.readLock().unlock();
+            }
+
+            // rows and tombstones cannot change while the mutator lock is held
+            long newSegmentId = ThreadLocalRandom.current().nextLong();
+            long paramsId = quantizer.id();
+            Path pagesTemp = directory.resolve(PAGES_FILE + TEMP_SUFFIX);
+            writeEmptyFile(pagesTemp, newSegmentId, 0);
+            for (RowFile file : new RowFile[]{floatRows, int8Rows, binaryRows}) {
+                writeEmptyFile(file.temp(directory), newSegmentId, file == floatRows ? 0 : paramsId);
+            }
+
+            try (FileChannel vectorsOut = FileChannel.open(floatRows.temp(directory), StandardOpenOption.WRITE);
+                 FileChannel int8Out = FileChannel.open(int8Rows.temp(directory), StandardOpenOption.WRITE);
+                 FileChannel binaryOut = FileChannel.open(binaryRows.temp(directory), StandardOpenOption.WRITE);
+                 FileChannel pagesOut = FileChannel.open(pagesTemp, StandardOpenOption.WRITE)) {
+                ByteBuffer vector = ByteBuffer.allocate(floatRows.stride);
+                ByteBuffer int8 = ByteBuffer.allocate(int8Rows.stride);
+                ByteBuffer binary = ByteBuffer.allocate(binaryRows.stride);
+                ByteBuffer idRow = ByteBuffer.allocate(ID_ROW_BYTES);
+                int kept = 0;
+                for (int row = 0; row < total; row++) {
+                    if (deleted.get(row)) continue;
+                    floatRows.copy(row, vector, vectorsOut, kept);
+                    int8Rows.copy(row, int8, int8Out, kept);
+                    binaryRows.copy(row, binary, binaryOut, kept);
+                    readFully(pageChannel, idRow.clear(), pageOffset(row));
+                    writeFully(pagesOut, idRow.flip(), pageOffset(kept));
+                    kept++;
+                }
+                for (FileChannel channel : new FileChannel[]{vectorsOut, int8Out, binaryOut, pagesOut}) {
+                    channel.force(true);
+                }
+            }
+
+            stateLock.writeLock().lock();
+            try {
+                closeChannels();
+                for (RowFile file : new RowFile[]{floatRows, int8Rows, binaryRows}) {
+                    move(file.temp(directory), directory.resolve(file.name));
+                }
+                move(pagesTemp, directory.resolve(PAGES_FILE));
+                resetState();
+                openFiles();
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+        } finally {
+            mutatorLock.unlock();
+        }
+    }
+
+    /**
+     * Refits the quantization parameters on a sample of live rows and rewrites the quantized sidecars,
+     * when the segment has grown enough since they were last fitted. Returns whether anything was done.
+     */
+    public boolean retrainQuantizationIfNeeded() throws IOException {
+        mutatorLock.lock();
+        try {
+            int live = liveCount();
+            if (live < Math.max(MIN_TRAINING_ROWS, 2 * quantizer.trainedRows())) return false;
+
+            VectorQuantizer fitted = VectorQuantizer.fit(sampleVectors(MAX_TRAINING_SAMPLE), dimensions);
+            writeQuantizedSidecars(fitted);
+            stateLock.writeLock().lock();
+            try {
+                installQuantizedSidecars(fitted);
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+            return true;
+        } finally {
+            mutatorLock.unlock();
+        }
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public long watermark() {
+        stateLock.readLock().lock();
+        try {
+            return watermark;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the owner's watermark forward and persists it. Never moves backwards; rows are written before the
+     * watermark that covers them, so after a crash the segment holds at least what its watermark says.
+     */
+    public void advanceWatermark(long value) throws IOException {
+        mutatorLock.lock();
+        try {
+            if (value <= watermark) return;
+            Path temp = directory.resolve(WATERMARK_FILE + TEMP_SUFFIX);
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                out.writeLong(value);
+            }
+            move(temp, directory.resolve(WATERMARK_FILE));
+            stateLock.writeLock().lock();
+            try {
+                watermark = value;
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+        } finally {
+            mutatorLock.unlock();
+        }
+    }
+
+    public int liveCount() {
+        stateLock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    public int deletedCount() {
+        stateLock.readLock().lock();
+        try {
+            return rows - liveCount;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stateLock.writeLock().lock();
+        try {
+            closeChannels();
+        } finally {
+            stateLock.writeLock().unlock();
+            // closing the channel releases the writer lock
+            if (lockChannel != null) lockChannel.close();
+        }
+    }
+
+    private void lockDirectory() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            lockChannel = null;
+            throw new IllegalStateException("Vector segment in " + directory + " is open in another process");
+        }
+    }
+
+    private long readWatermark() {
+        Path mark = directory.resolve(WATERMARK_FILE);
+        if (!Files.exists(mark)) return Long.MIN_VALUE;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(mark))) {
+            return in.readLong();
+        } catch (IOException e) {
+            // the owner syncs from scratch, which only costs time
+            return Long.MIN_VALUE;
+        }
+    }
+
+    // caller holds the mutator lock
+    private float[] readVector(int row) throws IOException {
+        ByteBuffer encoded = ByteBuffer.allocate(floatRows.stride);
+        readFully(floatRows.channel, encoded, floatRows.offset(row));
+        return EmbeddingCodec.decode(encoded.array());
+    }
+
+    private void openFiles() throws IOException {
+        floatRows.open(directory);
+        pageChannel = FileChannel.open(directory.resolve(PAGES_FILE), StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        ByteBuffer vectorHeader = readHeader(floatRows.channel);
+        ByteBuffer pageHeader = readHeader(pageChannel);
+        if (vectorHeader.getInt(8) != dimensions) {
+            throw new IOException("Segment has " + vectorHeader.getInt(8) + " dimensions, expected " + dimensions);
+        }
+        segmentId = vectorHeader.getLong(16);
+        if (segmentId != pageHeader.getLong(16)) {
+            throw new IOException("Segment files in " + directory + " do not belong together");
+        }
+
+        // a crash in the middle of an append leaves trailing vector rows without a page row
+        int count = (int) Math.min(floatRows.rowCount(), (pageChannel.size() - HEADER_BYTES) / ID_ROW_BYTES);
+        floatRows.channel.truncate(floatRows.offset(count));
+        pageChannel.truncate(pageOffset(count));
+        loadPageRows(count);
+        rows = count;
+
+        quantizer = readParams();
+        if (quantizer == null || !openQuantizedSidecars(count)) {
+            // derived data: regenerate from the float rows, keeping the parameters when they are usable
+            VectorQuantizer parameters = quantizer != null && quantizer.dimensions() == dimensions
+                    ? quantizer : VectorQuantizer.defaults(dimensions);
+            writeQuantizedSidecars(parameters);
+            installQuantizedSidecars(parameters);
+        }
+    }
+
+    private void loadPageRows(int count) throws IOException {
+        ByteBuffer idRows = ByteBuffer.allocate(ID_ROW_BYTES * 4096).order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, String> interned = new HashMap<>();
+        for (int row = 0; row < count; ) {
+            int batch = Math.min(4096, count - row);
+            idRows.clear().limit(batch * ID_ROW_BYTES);
+            readFully(pageChannel, idRows, pageOffset(row));
+            for (int i = 0; i < batch; i++, row++) {
+                int base = i * ID_ROW_BYTES;
+                int length = 0;
+                while (length < FILE_ID_BYTES && idRows.get(base + length) != 0) length++;
+                String fileId = new String(idRows.array(), base, length, StandardCharsets.UTF_8);
+                fileId = interned.computeIfAbsent(fileId, f -> f);
+                int pageId = idRows.getInt(base + FILE_ID_BYTES);
+
+                ensureCapacity(row + 1);
+                if (idRows.get(base + TOMBSTONE_OFFSET) != 0) {
+                    fileIds[row] = fileId;
+                    pageIds[row] = pageId;
+                    deleted.set(row);
+                } else {
+                    register(row, fileId, pageId);
+                    liveCount++;
+                }
+            }
+        }
+    }
+
+    // true when both sidecars belong to this segment and parameter set and cover every row
+    private boolean openQuantizedSidecars(int count) throws IOException {
+        if (quantizer.dimensions() != dimensions) return false;
+        for (RowFile file : new RowFile[]{int8Rows, binaryRows}) {
+            if (!Files.exists(directory.resolve(file.name))) return false;
+        }
+        int8Rows.open(directory);
+        binaryRows.open(directory);
+        for (RowFile file : new RowFile[]{int8Rows, binaryRows}) {
+            ByteBuffer header;
+            try {
+                header = readHeader(file.channel);
+            } catch (IOException e) {
+                return false;
+            }
+            if (header.getLong(16) != segmentId || header.getLong(24) != quantizer.id() || file.rowCount() < count) {
+                return false;
+            }
+            file.channel.truncate(file.offset(count));
+        }
+        return true;
+    }
+
+    private void writeQuantizedSidecars(VectorQuantizer parameters) throws IOException {
+        writeEmptyFile(int8Rows.temp(directory), segmentId, parameters.id());
+        writeEmptyFile(binaryRows.temp(directory), segmentId, parameters.id());
+
+        try (FileChannel int8Out = FileChannel.open(int8Rows.temp(directory), StandardOpenOption.WRITE);
+             FileChannel binaryOut = FileChannel.open(binaryRows.temp(directory), StandardOpenOption.WRITE)) {
+            ByteBuffer encoded = ByteBuffer.allocate(floatRows.stride);
+            for (int row = 0; row < rows; row++) {
+                readFully(floatRows.channel, encoded.clear(), floatRows.offset(row));
+                float[] vector = EmbeddingCodec.decode(encoded.array());
+                writeFully(int8Out, quantizeInt8(parameters, vector), int8Rows.offset(row));
+                writeFully(binaryOut, quantizeBinary(parameters, vector), binaryRows.offset(row));
+            }
+            int8Out.force(true);
+            binaryOut.force(true);
+        }
+
+        Path paramsTemp = directory.resolve(PARAMS_FILE + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(paramsTemp)))) {
+            parameters.writeTo(out);
+        }
+    }
+
+    private void installQuantizedSidecars(VectorQuantizer parameters) throws IOException {
+        int8Rows.close();
+        binaryRows.close();
+        move(int8Rows.temp(directory), directory.resolve(INT8_FILE));
+        move(binaryRows.temp(directory), directory.resolve(BINARY_FILE));
+        move(directory.resolve(PARAMS_FILE + TEMP_SUFFIX), directory.resolve(PARAMS_FILE));
+        int8Rows.open(directory);
+        binaryRows.open(directory);
+        quantizer = parameters;
+    }
+
+    private VectorQuantizer readParams() {
+        Path params = directory.resolve(PARAMS_FILE);
+        if (!Files.exists(params)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(params)))) {
+            return VectorQuantizer.readFrom(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeEmptyFile(Path path, long segmentId, long paramsId) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(dimensions).putInt(0).putLong(segmentId).putLong(paramsId).clear();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+            channel.force(true);
+        }
+    }
+
+    private ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (channel.size() < HEADER_BYTES) {
+            throw new IOException("Truncated segment header in " + directory);
+        }
+        readFully(channel, header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a vector segment (or unsupported version) in " + directory);
+        }
+        return header;
+    }
+
+    private void register(int row, String fileId, int pageId) {
+        ensureCapacity(row + 1);
+        fileIds[row] = fileId;
+        pageIds[row] = pageId;
+        rowByPage.put(pageKey(fileId, pageId), row);
+        rowsByFile.computeIfAbsent(fileId, f -> new ArrayList<>()).add(row);
+    }
+
+    // caller holds both locks
+    private void tombstone(int row) throws IOException {
+        if (deleted.get(row)) return;
+        writeFully(pageChannel, ByteBuffer.wrap(new byte[]{1}), pageOffset(row) + TOMBSTONE_OFFSET);
+        deleted.set(row);
+        liveCount--;
+    }
+
+    private Supplier<RowScorer> floatScorer(float[] query, int count) {
+        FloatBuffer[] views = floatViews(count);
+        int rowsPerMap = floatRows.rowsPerMap;
+        return () -> {
+            // absolute bulk reads on private views, the shared buffers are never touched
+            FloatBuffer[] local = new FloatBuffer[views.length];
+            for (int i = 0; i < views.length; i++) local[i] = views[i].duplicate();
+            float[] row = new float[dimensions];
+            return r -> {
+                local[r / rowsPerMap].get((r % rowsPerMap) * dimensions, row);
+                return VectorMath.dot(query, row);
+            };
+        };
+    }
+
+    private Supplier<RowScorer> int8Scorer(float[] query, int count) {
+        MappedByteBuffer[] views = int8Rows.mappedUpTo(count);
+        int rowsPerMap = int8Rows.rowsPerMap;
+        byte[] quantizedQuery = new byte[dimensions];
+        VectorQuantizer.quantizeInt8Query(query, quantizedQuery);
+        return () -> {
+            ByteBuffer[] local = new ByteBuffer[views.length];
+            for (int i = 0; i < views.length; i++) local[i] = views[i].duplicate();
+            byte[] row = new byte[dimensions];
+            return r -> {
+                local[r / rowsPerMap].get((r % rowsPerMap) * dimensions, row);
+                return VectorMath.dot(quantizedQuery, row);
+            };
+        };
+    }
+
+    private Supplier<RowScorer> binaryScorer(float[] query, int count) {
+        MappedByteBuffer[] views = binaryRows.mappedUpTo(count);
+        int rowsPerMap = binaryRows.rowsPerMap;
+        int words = VectorQuantizer.binaryWords(dimensions);
+        long[] quantizedQuery = new long[words];
+        quantizer.quantizeBinary(query, quantizedQuery);
+        return () -> {
+            LongBuffer[] local = new LongBuffer[views.length];
+            for (int i = 0; i < views.length; i++) {
+                local[i] = views[i].duplicate().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            }
+            long[] row = new long[words];
+            // fewer differing bits ranks higher
+            return r -> {
+                local[r / rowsPerMap].get((r % rowsPerMap) * words, row);
+                return -VectorQuantizer.hammingDistance(quantizedQuery, row);
+            };
+        };
+    }
+
+    private FloatBuffer[] floatViews(int count) {
+        MappedByteBuffer[] maps = floatRows.mappedUpTo(count);
+        FloatBuffer[] views = new FloatBuffer[maps.length];
+        for (int i = 0; i < maps.length; i++) {
+            views[i] = maps[i].duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+        return views;
+    }
+
+    private ByteBuffer quantizeInt8(VectorQuantizer parameters, float[] vector) {
+        byte[] row = new byte[dimensions];
+        parameters.quantizeInt8(vector, row);
+        return ByteBuffer.wrap(row);
+    }
+
+    private ByteBuffer quantizeBinary(VectorQuantizer parameters, float[] vector) {
+        long[] words = new long[VectorQuantizer.binaryWords(dimensions)];
+        parameters.quantizeBinary(vector, words);
+        ByteBuffer row = ByteBuffer.allocate(words.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        row.asLongBuffer().put(words);
+        return row;
+    }
+
+    private void resetState() {
+        deleted.clear();
+        rowByPage.clear();
+        rowsByFile.clear();
+        rows = 0;
+        liveCount = 0;
+    }
+
+    private void closeChannels() throws IOException {
+        floatRows.close();
+        int8Rows.close();
+        binaryRows.close();
+        if (pageChannel != null) pageChannel.close();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= fileIds.length) return;
+        int newCapacity = Math.max(capacity, fileIds.length * 2);
+        fileIds = Arrays.copyOf(fileIds, newCapacity);
+        pageIds = Arrays.copyOf(pageIds, newCapacity);
+    }
+
+    private static long pageOffset(long row) {
+        return HEADER_BYTES + row * ID_ROW_BYTES;
+    }
+
+    private static String pageKey(String fileId, int pageId) {
+        return fileId + '#' + pageId;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of segment file");
+            position += read;
+        }
+    }
+
+    /**
+     * One fixed-stride row file and its read-only mappings.
+     */
+    private static final class RowFile {
+        private final String name;
+        private final int stride;
+        // rows per mapping, a single MappedByteBuffer cannot exceed 2 GB
+        private final int rowsPerMap;
+        private FileChannel channel;
+        private MappedByteBuffer[] maps = new MappedByteBuffer[0];
+        private int[] mappedRows = new int[0];
+
+        RowFile(String name, int stride) {
+            this.name = name;
+            this.stride = stride;
+            this.rowsPerMap = Integer.MAX_VALUE / stride;
+        }
+
+        void open(Path directory) throws IOException {
+            channel = FileChannel.open(directory.resolve(name), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        long offset(long row) {
+            return HEADER_BYTES + row * stride;
+        }
+
+        long rowCount() throws IOException {
+            return (channel.size() - HEADER_BYTES) / stride;
+        }
+
+        Path temp(Path directory) {
+            return directory.resolve(name + TEMP_SUFFIX);
+        }
+
+        void write(ByteBuffer row, int index) throws IOException {
+            writeFully(channel, row, offset(index));
+        }
+
+        void copy(int from, ByteBuffer buffer, FileChannel target, int to) throws IOException {
+            readFully(channel, buffer.clear(), offset(from));
+            writeFully(target, buffer.flip(), offset(to));
+        }
+
+        /**
+         * Read-only mappings covering the first {@code count} rows, remapping the tail when the file has grown.
+         */
+        synchronized MappedByteBuffer[] mappedUpTo(int count) {
+            int needed = count == 0 ? 0 : (count - 1) / rowsPerMap + 1;
+            if (needed > maps.length) {
+                maps = Arrays.copyOf(maps, needed);
+                mappedRows = Arrays.copyOf(mappedRows, needed);
+            }
+            try {
+                for (int i = 0; i < needed; i++) {
+                    int rowsInMap = Math.min(rowsPerMap, count - i * rowsPerMap);
+                    if (maps[i] == null || mappedRows[i] < rowsInMap) {
+                        maps[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset((long) i * rowsPerMap), (long) rowsInMap * stride);
+                        mappedRows[i] = rowsInMap;
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to map " + name, e);
+            }
+            return Arrays.copyOf(maps, needed);
+        }
+
+        synchronized void close() throws IOException {
+            maps = new MappedByteBuffer[0];
+            mappedRows = new int[0];
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private interface RowScorer {
+        float score(int row);
+    }
+
+    /**
+     * Scans a row range; ranges above the chunk size are split in two and the halves' heaps merged.
+     */
+    private final class ScanTask extends RecursiveTask<TopKSelector> {
+        private final Supplier<RowScorer> scorers;
+        private final int k;
+        private final int from;
+        private final int to;
+        private final int chunkRows;
+
+        ScanTask(Supplier<RowScorer> scorers, int k, int from, int to, int chunkRows) {
+            this.scorers = scorers;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+            this.chunkRows = chunkRows;
+        }
+
+        @Override
+        protected TopKSelector compute() {
+            if (to - from > chunkRows) {
+                int mid = (from + to) >>> 1;
+                ScanTask left = new ScanTask(scorers, k, from, mid, chunkRows);
+                left.fork();
+                TopKSelector right = new ScanTask(scorers, k, mid, to, chunkRows).compute();
+                right.merge(left.join());
+                return right;
+            }
+
+            TopKSelector selector = new TopKSelector(k);
+            RowScorer scorer = scorers.get();
+            for (int r = from; r < to; r++) {
+                if (!deleted.get(r)) {
+                    selector.offer(r, scorer.score(r));
+                }
+            }
+            return selector;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.file_repository_service.util;
+
+import com.example.file_repository_service.config.ZipValidationProperties;
+import com.example.file_repository_service.entity.TenantConfig;
+import com.example.file_repository_service.exception.InvalidFileException;
+import com.example.file_repository_service.service.StorageService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Validates a ZIP archive entry by entry straight off the stream: each entry's leading bytes are sniffed
+ * and checked against the tenant rules like a regular upload, the rest is only counted. Nothing is
+ * extracted, and archive bombs are stopped by the entry count, total size and compression ratio limits
+ * as soon as they are crossed.
+ */
+@Log4j2
+@Component
+public class ZipValidator {
+
+    private static final int SKIP_BUFFER_BYTES = 64 * 1024;
+
+    private final FileValidator fileValidator;
+    private final MediaTypeDetector mediaTypeDetector;
+    private final ZipValidationProperties properties;
+
+    public ZipValidator(FileValidator fileValidator,
+                        MediaTypeDetector mediaTypeDetector,
+                        ZipValidationProperties properties) {
+        this.fileValidator = fileValidator;
+        this.mediaTypeDetector = mediaTypeDetector;
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the media type of the archive itself, sniffed from its leading bytes on the same pass, so the
+     * upload never has to be read again to detect it.
+     */
+    public String validate(InputStream archive, long archiveSizeBytes, TenantConfig tenantConfig,
+                           String archiveName) throws IOException {
+        long maxTotal = Math.min(properties.getMaxTotalUncompressedBytes(),
+                Math.max(archiveSizeBytes, 1) * properties.getMaxCompressionRatio());
+        int entries = 0;
+        long total = 0;
+        byte[] buffer = new byte[SKIP_BUFFER_BYTES];
+
+        PushbackInputStream in = new PushbackInputStream(archive, StorageService.SNIFF_BYTES);
+        byte[] archiveHead = in.readNBytes(StorageService.SNIFF_BYTES);
+        in.unread(archiveHead);
+        String archiveType = mediaTypeDetector.detectMimeType(archiveHead, archiveName);
+
+        try (ZipInputStream zis = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.isDirectory()) continue;
+                if (++entries > properties.getMaxEntries()) {
+                    throw new InvalidFileException("ZIP archive has more than " + properties.getMaxEntries() + " entries");
+                }
+
+                String name = entry.getName();
+                String fileName = name.substring(name.lastIndexOf('/') + 1);
+                fileValidator.validateExtension(fileName, tenantConfig);
+                byte[] head = zis.readNBytes(StorageService.SNIFF_BYTES);
+                String mimeType = mediaTypeDetector.detectMimeType(head, fileName);
+                fileValidator.validateMimeType(mimeType, tenantConfig);
+
+                long size = head.length;
+                total += head.length;
+                int read;
+                do {
+                    if (total > maxTotal) {
+                        log.warn("ZIP archive inflates too far - archive={} bytes, inflated so far={} bytes", archiveSizeBytes, total);
+                        throw new InvalidFileException("ZIP archive exceeds the allowed uncompressed size or compression ratio");
+                    }
+                    read = zis.read(buffer);
+                    if (read > 0) {
+                        size += read;
+                        total += read;
+                    }
+                } while (read != -1);
+
+                fileValidator.validateSize(size, tenantConfig);
+                // sizes from the local header or data descriptor are only reliable once the entry is read
+                long compressed = entry.getCompressedSize();
+                if (compressed > 0 && size / compressed > properties.getMaxCompressionRatio()) {
+                    throw new InvalidFileException("ZIP entry '" + name + "' exceeds the allowed compression ratio");
+                }
+                log.debug("ZIP entry validated - name={}, mimeType={}, size={} bytes", name, mimeType, size);
+            }
+        }
+
+        if (entries == 0) {
+            throw new InvalidFileException("ZIP archive is empty.");
+        }
+        log.debug("ZIP archive validated - entries={}, uncompressed={} bytes, mediaType={}", entries, total, archiveType);
+        return archiveType;
+    }
+}
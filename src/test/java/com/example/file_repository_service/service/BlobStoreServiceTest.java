@@ -0,0 +1,192 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.StorageProperties;
+import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.repository.FileBlobRepository;
+import com.example.file_repository_service.repository.FileRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlobStoreServiceTest {
+
+    private static final String SCOPE = "T1";
+    private static final String SHA = "ab".repeat(32);
+
+    @TempDir
+    Path base;
+
+    private final FileBlobRepository blobRepository = mock(FileBlobRepository.class);
+    private final FileRepository fileRepository = mock(FileRepository.class);
+    private StorageService storageService;
+    private BlobStoreService service;
+    private Path blobFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        StorageProperties properties = new StorageProperties();
+        properties.setBasePath(base.toString());
+        properties.setTempPath(base.resolve("tmp").toString());
+        properties.setContentAddressed(true);
+        storageService = new StorageService(properties);
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        service = new BlobStoreService(storageService, properties, blobRepository, fileRepository, transactionManager);
+
+        blobFile = storageService.resolveFilePath(storageService.blobPath(SCOPE, SHA));
+        Files.createDirectories(blobFile.getParent());
+        Files.writeString(blobFile, "content");
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void lastReleaseDeletesTheBlobOnlyAfterCommit() {
+        when(blobRepository.deleteUnreferenced(SHA, SCOPE)).thenReturn(1);
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.release(SCOPE, SHA);
+
+        verify(blobRepository, never()).deleteUnreferenced(anyString(), anyString());
+        assertThat(blobFile).exists();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(blobFile).doesNotExist();
+    }
+
+    @Test
+    void rolledBackReleaseKeepsTheBlob() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.release(SCOPE, SHA);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verify(blobRepository, never()).deleteUnreferenced(anyString(), anyString());
+        assertThat(blobFile).exists();
+    }
+
+    @Test
+    void blobReacquiredBeforeCleanupIsKept() {
+        // a concurrent upload counted the row up again, the cleanup's conditional delete finds nothing
+        when(blobRepository.deleteUnreferenced(SHA, SCOPE)).thenReturn(0);
+
+        service.release(SCOPE, SHA);
+
+        verify(blobRepository).deleteUnreferenced(SHA, SCOPE);
+        assertThat(blobFile).exists();
+    }
+
+    @Test
+    void plainFileIsDeletedAfterCommit() throws Exception {
+        Files.createDirectories(base.resolve("T1"));
+        Files.writeString(base.resolve("T1/a.txt"), "a");
+        FileEntity file = FileEntity.builder().id("f1").filePath("T1/a.txt").build();
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.delete(file);
+        assertThat(base.resolve("T1/a.txt")).exists();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(base.resolve("T1/a.txt")).doesNotExist();
+    }
+
+    @Test
+    void migrateTakesTheReferenceBeforeLinking() throws Exception {
+        Files.delete(blobFile);
+        Files.createDirectories(base.resolve("T1"));
+        Files.writeString(base.resolve("T1/a.txt"), "content");
+        FileEntity file = FileEntity.builder().id("f1").filePath("T1/a.txt").build();
+        String blobPath = storageService.blobPath(SCOPE, SHA);
+        when(blobRepository.acquire(SHA, SCOPE, 7)).thenAnswer(invocation -> {
+            assertThat(blobFile).doesNotExist();
+            return 1;
+        });
+        when(fileRepository.moveToBlob("f1", "T1/a.txt", blobPath, SCOPE, SHA)).thenReturn(1);
+
+        assertThat(service.migrate(file, SCOPE, SHA, 7)).isTrue();
+
+        InOrder order = inOrder(blobRepository, fileRepository);
+        order.verify(blobRepository).acquire(SHA, SCOPE, 7);
+        order.verify(fileRepository).moveToBlob(anyString(), anyString(), anyString(), anyString(), anyString());
+        verify(blobRepository, never()).release(anyString(), anyString());
+        assertThat(blobFile).hasContent("content");
+    }
+
+    @Test
+    void migrateOfAChangedRowDropsTheNewBlobLink() throws Exception {
+        Files.delete(blobFile);
+        Files.createDirectories(base.resolve("T1"));
+        Files.writeString(base.resolve("T1/a.txt"), "content");
+        FileEntity file = FileEntity.builder().id("f1").filePath("T1/a.txt").build();
+        when(fileRepository.moveToBlob(anyString(), anyString(), anyString(), anyString(), anyString())).thenReturn(0);
+        // the reference taken by migrate was the only one
+        when(blobRepository.deleteUnreferenced(SHA, SCOPE)).thenReturn(1);
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertThat(service.migrate(file, SCOPE, SHA, 7)).isFalse();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        InOrder order = inOrder(blobRepository);
+        order.verify(blobRepository).acquire(SHA, SCOPE, 7);
+        order.verify(blobRepository).release(SHA, SCOPE);
+        assertThat(blobFile).doesNotExist();
+        assertThat(base.resolve("T1/a.txt")).hasContent("content");
+    }
+
+    @Test
+    void migrateOfAChangedRowKeepsABlobOthersReferTo() throws Exception {
+        Files.createDirectories(base.resolve("T1"));
+        Files.writeString(base.resolve("T1/a.txt"), "content");
+        FileEntity file = FileEntity.builder().id("f1").filePath("T1/a.txt").build();
+        when(fileRepository.moveToBlob(anyString(), anyString(), anyString(), anyString(), anyString())).thenReturn(0);
+        when(blobRepository.deleteUnreferenced(SHA, SCOPE)).thenReturn(0);
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertThat(service.migrate(file, SCOPE, SHA, 7)).isFalse();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        verify(blobRepository).release(SHA, SCOPE);
+        assertThat(blobFile).hasContent("content");
+    }
+
+    @Test
+    void adoptRecreatesABlobFileDeletedByAnEarlierRelease() throws Exception {
+        Files.delete(blobFile);
+        Files.createDirectories(base.resolve("T1"));
+        Files.writeString(base.resolve("T1/upload.bin"), "content");
+        when(blobRepository.acquire(anyString(), anyString(), anyLong())).thenReturn(1);
+
+        StorageService.StoredFile stored = service.adopt(SCOPE,
+                new StorageService.StoredFile("T1/upload.bin", 7, SHA, null));
+
+        assertThat(stored.relativePath()).isEqualTo(storageService.blobPath(SCOPE, SHA));
+        assertThat(blobFile).hasContent("content");
+        assertThat(base.resolve("T1/upload.bin")).doesNotExist();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.DownloadProperties;
+import com.example.file_repository_service.config.StorageProperties;
+import com.example.file_repository_service.entity.FileEntity;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Whole-file download throughput over loopback through an embedded Tomcat: the former UrlResource copy,
+ * {@link FileDownloadService} with FileChannel.transferTo, and with sendfile. Not picked up by a plain
+ * {@code mvn test}; run it with {@code mvn test -Dtest=FileDownloadBenchmark [-Dbench.megabytes=1024]}.
+ */
+class FileDownloadBenchmark {
+
+    private static final int MEGABYTES = Integer.getInteger("bench.megabytes", 1024);
+
+    @TempDir
+    Path base;
+
+    @Test
+    void wholeFileThroughput() throws Exception {
+        Path path = base.resolve("big.bin");
+        byte[] chunk = new byte[1 << 20];
+        new Random(1).nextBytes(chunk);
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (int i = 0; i < MEGABYTES; i++) out.write(chunk);
+        }
+
+        StorageProperties storage = new StorageProperties();
+        storage.setBasePath(base.toString());
+        storage.setTempPath(base.resolve("tmp").toString());
+        StorageService storageService = new StorageService(storage);
+        DownloadProperties noSendfile = new DownloadProperties();
+        noSendfile.setSendfileEnabled(false);
+        FileDownloadService sendfile = new FileDownloadService(storageService, new DownloadProperties());
+        FileDownloadService transferTo = new FileDownloadService(storageService, noSendfile);
+        FileEntity file = FileEntity.builder()
+                .id("big")
+                .fileName("big.bin")
+                .filePath("big.bin")
+                .contentSha256("ab".repeat(32))
+                .modifiedAt(OffsetDateTime.now())
+                .build();
+
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(base.resolve("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        Context context = tomcat.addContext("", null);
+        addServlet(context, "copy", (request, response) -> {
+            response.setContentType("application/octet-stream");
+            response.setContentLengthLong(Files.size(path));
+            try (InputStream in = new UrlResource(path.toUri()).getInputStream()) {
+                StreamUtils.copy(in, response.getOutputStream());
+            }
+        });
+        addServlet(context, "transferTo", (request, response) ->
+                transferTo.serve(file, "application/octet-stream", false, request, response));
+        addServlet(context, "sendfile", (request, response) ->
+                sendfile.serve(file, "application/octet-stream", false, request, response));
+        tomcat.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            int port = tomcat.getConnector().getLocalPort();
+            System.out.printf("%d MB over loopback, cold then warm%n", MEGABYTES);
+            for (int round = 0; round < 2; round++) {
+                for (String name : new String[]{"copy", "transferTo", "sendfile"}) {
+                    long start = System.nanoTime();
+                    HttpResponse<InputStream> response = client.send(
+                            HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/" + name)).build(),
+                            HttpResponse.BodyHandlers.ofInputStream());
+                    long bytes;
+                    try (InputStream body = response.body()) {
+                        bytes = body.transferTo(OutputStream.nullOutputStream());
+                    }
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    assertThat(bytes).isEqualTo(Files.size(path));
+                    System.out.printf("  %-10s %.0f MB/s%n", name, (bytes >> 20) / seconds);
+                }
+            }
+        } finally {
+            tomcat.stop();
+            tomcat.destroy();
+        }
+    }
+
+    private static void addServlet(Context context, String name, Handler handler) {
+        Tomcat.addServlet(context, name, new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                handler.handle(request, response);
+            }
+        });
+        context.addServletMappingDecoded("/" + name, name);
+    }
+
+    private interface Handler {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+}
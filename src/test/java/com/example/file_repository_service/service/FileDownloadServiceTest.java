@@ -0,0 +1,251 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.DownloadProperties;
+import com.example.file_repository_service.config.StorageProperties;
+import com.example.file_repository_service.entity.FileEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileDownloadServiceTest {
+
+    private static final String SHA = "ab".repeat(32);
+    private static final String ETAG = "\"" + SHA + "\"";
+    private static final OffsetDateTime MODIFIED = OffsetDateTime.of(2026, 3, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @TempDir
+    Path base;
+
+    private byte[] content;
+    private FileEntity file;
+    private DownloadProperties properties;
+    private FileDownloadService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        content = new byte[1000];
+        new Random(1).nextBytes(content);
+        Files.createDirectories(base.resolve("T1"));
+        Files.write(base.resolve("T1/report.pdf"), content);
+
+        StorageProperties storage = new StorageProperties();
+        storage.setBasePath(base.toString());
+        storage.setTempPath(base.resolve("tmp").toString());
+        properties = new DownloadProperties();
+        service = new FileDownloadService(new StorageService(storage), properties);
+
+        file = FileEntity.builder()
+                .id("f1")
+                .fileName("report.pdf")
+                .filePath("T1/report.pdf")
+                .contentSha256(SHA)
+                .modifiedAt(MODIFIED)
+                .build();
+    }
+
+    @Test
+    void wholeFileWithoutRange() throws Exception {
+        MockHttpServletResponse response = serve(request());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+        assertThat(response.getContentLengthLong()).isEqualTo(1000);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).isEqualTo("inline; filename=\"report.pdf\"");
+    }
+
+    @Test
+    void singleRange() throws Exception {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-19");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 10-19/1000");
+        assertThat(response.getContentLengthLong()).isEqualTo(10);
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 10, 20));
+    }
+
+    @Test
+    void suffixAndOpenEndedRanges() throws Exception {
+        MockHttpServletRequest suffix = request();
+        suffix.addHeader(HttpHeaders.RANGE, "bytes=-5");
+        MockHttpServletResponse response = serve(suffix);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 995-999/1000");
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 995, 1000));
+
+        MockHttpServletRequest openEnded = request();
+        openEnded.addHeader(HttpHeaders.RANGE, "bytes=990-5000");
+        response = serve(openEnded);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 990-999/1000");
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 990, 1000));
+    }
+
+    @Test
+    void multipleRangesAreMultipartByteranges() throws Exception {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-3,500-509");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        String contentType = response.getContentType();
+        assertThat(contentType).startsWith("multipart/byteranges; boundary=");
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(("\r\n--" + boundary + "\r\nContent-Type: application/pdf\r\n"
+                + "Content-Range: bytes 0-3/1000\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        expected.write(content, 0, 4);
+        expected.write(("\r\n--" + boundary + "\r\nContent-Type: application/pdf\r\n"
+                + "Content-Range: bytes 500-509/1000\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        expected.write(content, 500, 10);
+        expected.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+        assertThat(response.getContentAsByteArray()).isEqualTo(expected.toByteArray());
+        assertThat(response.getContentLengthLong()).isEqualTo(expected.size());
+    }
+
+    @Test
+    void unsatisfiableRangeIs416() throws Exception {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=1000-1100");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */1000");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void unsatisfiableRangesAreSkippedWhenOthersFit() throws Exception {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=2000-,0-1");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-1/1000");
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 0, 2));
+    }
+
+    @Test
+    void rangesAskingForMoreThanTheFileAre416() throws Exception {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-999,0-999");
+
+        assertThat(serve(request).getStatus()).isEqualTo(416);
+    }
+
+    @Test
+    void malformedOrTooManyRangesGetTheWholeFile() throws Exception {
+        MockHttpServletRequest malformed = request();
+        malformed.addHeader(HttpHeaders.RANGE, "bytes=abc");
+        assertThat(serve(malformed).getStatus()).isEqualTo(200);
+
+        properties.setMaxRanges(1);
+        MockHttpServletRequest tooMany = request();
+        tooMany.addHeader(HttpHeaders.RANGE, "bytes=0-1,5-6");
+        MockHttpServletResponse response = serve(tooMany);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void ifRangeWithCurrentValidatorsServesTheRange() throws Exception {
+        MockHttpServletRequest byEtag = request();
+        byEtag.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        byEtag.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        assertThat(serve(byEtag).getStatus()).isEqualTo(206);
+
+        MockHttpServletRequest byDate = request();
+        byDate.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        byDate.addHeader(HttpHeaders.IF_RANGE, MODIFIED.toInstant().toEpochMilli());
+        assertThat(serve(byDate).getStatus()).isEqualTo(206);
+    }
+
+    @Test
+    void ifRangeWithStaleOrWeakValidatorsServesTheWholeFile() throws Exception {
+        for (Object validator : new Object[]{"\"other\"", "W/" + ETAG, MODIFIED.minusDays(1).toInstant().toEpochMilli()}) {
+            MockHttpServletRequest request = request();
+            request.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+            request.addHeader(HttpHeaders.IF_RANGE, validator);
+
+            MockHttpServletResponse response = serve(request);
+
+            assertThat(response.getStatus()).as(validator.toString()).isEqualTo(200);
+            assertThat(response.getContentAsByteArray()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void headSendsHeadersOnly() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/files/f1");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentLengthLong()).isEqualTo(10);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void largeBodiesAreHandedToSendfile() throws Exception {
+        properties.setSendfileMinBytes(100);
+        MockHttpServletRequest request = request();
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-299");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.filename"))
+                .isEqualTo(base.resolve("T1/report.pdf").toAbsolutePath().toString());
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(100L);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(300L);
+    }
+
+    @Test
+    void matchingIfNoneMatchIsNotModified() {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(service.checkNotModified(file, request, response)).isTrue();
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+
+        MockHttpServletRequest stale = request();
+        stale.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        assertThat(service.checkNotModified(file, stale, new MockHttpServletResponse())).isFalse();
+    }
+
+    private MockHttpServletRequest request() {
+        return new MockHttpServletRequest("GET", "/files/f1");
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.serve(file, "application/pdf", true, request, response);
+        return response;
+    }
+}
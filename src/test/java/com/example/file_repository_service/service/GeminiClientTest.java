@@ -0,0 +1,88 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.GeminiProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GeminiClientTest {
+
+    private static final long OPEN_MS = 100;
+
+    private HttpServer server;
+    private GeminiClient client;
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = (status.get() == 200 ? "{\"embeddings\":[{\"values\":[1.0,0.0]}]}" : "{}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status.get(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        GeminiProperties properties = new GeminiProperties();
+        properties.setKey("test");
+        properties.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        properties.setMaxRetries(0);
+        properties.setMaxConcurrentRequests(1);
+        properties.setCircuitBreakerFailureThreshold(1);
+        properties.setCircuitBreakerOpenMs(OPEN_MS);
+        client = new GeminiClient(properties);
+    }
+
+    @AfterEach
+    void stopServer() {
+        client.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void nonRetryableStatusOnHalfOpenTrialClosesCircuit() throws Exception {
+        status.set(503);
+        assertThatThrownBy(() -> client.generateEmbeddings("a")).hasMessageContaining("503");
+        // open: rejected without a request
+        assertThatThrownBy(() -> client.generateEmbeddings("a")).hasMessageContaining("circuit breaker is open");
+        assertThat(requests.get()).isEqualTo(1);
+
+        Thread.sleep(OPEN_MS + 50);
+        status.set(400);
+        assertThatThrownBy(() -> client.generateEmbeddings("a")).hasMessageContaining("400");
+        assertThat(requests.get()).isEqualTo(2);
+
+        // the 400 trial closed the circuit, the next call is sent
+        status.set(200);
+        List<float[]> vectors = client.generateEmbeddings(List.of("a"));
+        assertThat(vectors).hasSize(1);
+        assertThat(requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    void failedHalfOpenTrialReopensCircuit() throws Exception {
+        status.set(500);
+        assertThatThrownBy(() -> client.generateEmbeddings("a")).hasMessageContaining("500");
+
+        Thread.sleep(OPEN_MS + 50);
+        assertThatThrownBy(() -> client.generateEmbeddings("a")).hasMessageContaining("500");
+        assertThatThrownBy(() -> client.generateEmbeddings("a")).hasMessageContaining("circuit breaker is open");
+        assertThat(requests.get()).isEqualTo(2);
+    }
+}
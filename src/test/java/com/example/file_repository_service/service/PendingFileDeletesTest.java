@@ -0,0 +1,65 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.StorageProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PendingFileDeletesTest {
+
+    @TempDir
+    Path base;
+
+    private StorageService storageService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        StorageProperties storage = new StorageProperties();
+        storage.setBasePath(base.toString());
+        storage.setTempPath(base.resolve("tmp").toString());
+        storageService = new StorageService(storage);
+        Files.writeString(base.resolve("a.txt"), "a");
+        Files.writeString(base.resolve("b.txt"), "b");
+    }
+
+    @Test
+    void pathsStayUntilTheirGracePeriodIsOver() {
+        PendingFileDeletes deletes = new PendingFileDeletes(storageService, 60_000);
+        deletes.add("a.txt");
+
+        deletes.deleteDue();
+
+        assertThat(base.resolve("a.txt")).exists();
+        assertThat(deletes.size()).isEqualTo(1);
+    }
+
+    @Test
+    void duePathsAreDeleted() {
+        PendingFileDeletes deletes = new PendingFileDeletes(storageService, 0);
+        deletes.add("a.txt");
+        deletes.add("b.txt");
+
+        deletes.deleteDue();
+
+        assertThat(base.resolve("a.txt")).doesNotExist();
+        assertThat(base.resolve("b.txt")).doesNotExist();
+        assertThat(deletes.size()).isZero();
+    }
+
+    @Test
+    void drainWaitsForTheLastGracePeriod() throws Exception {
+        PendingFileDeletes deletes = new PendingFileDeletes(storageService, 200);
+        deletes.add("a.txt");
+        long start = System.nanoTime();
+
+        deletes.drain();
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(150_000_000L);
+        assertThat(base.resolve("a.txt")).doesNotExist();
+    }
+}
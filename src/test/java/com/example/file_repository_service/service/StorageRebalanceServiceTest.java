@@ -0,0 +1,90 @@
+package com.example.file_repository_service.service;
+
+import com.example.file_repository_service.config.StorageProperties;
+import com.example.file_repository_service.config.StorageRebalanceProperties;
+import com.example.file_repository_service.entity.FileEntity;
+import com.example.file_repository_service.repository.FileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StorageRebalanceServiceTest {
+
+    private static final String FILE_ID = "CF_FR_1_20260101_000000_abc";
+    private static final String OLD_PATH = "T1/2026_01/" + FILE_ID + ".pdf";
+
+    @TempDir
+    Path base;
+
+    private final FileRepository fileRepository = mock(FileRepository.class);
+    private StorageService storageService;
+    private StorageRebalanceService service;
+    private FileEntity file;
+    private String newPath;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        StorageProperties storage = new StorageProperties();
+        storage.setBasePath(base.toString());
+        storage.setTempPath(base.resolve("tmp").toString());
+        storageService = new StorageService(storage);
+
+        StorageRebalanceProperties properties = new StorageRebalanceProperties();
+        properties.setMaxFilesPerSecond(1000);
+        properties.setOldPathGraceMs(0);
+        service = new StorageRebalanceService(fileRepository, storageService, properties);
+
+        Files.createDirectories(base.resolve("T1/2026_01"));
+        Files.writeString(base.resolve(OLD_PATH), "content");
+        file = FileEntity.builder().id(FILE_ID).tenantId(1L).filePath(OLD_PATH).build();
+        newPath = storageService.shardedPath(OLD_PATH, FILE_ID);
+
+        when(fileRepository.findBatchAfterId(eq(""), anyInt())).thenReturn(List.of(file));
+        when(fileRepository.findBatchAfterId(eq(FILE_ID), anyInt())).thenReturn(List.of());
+    }
+
+    @Test
+    void fileIsMovedToItsShardedPath() {
+        when(fileRepository.updateFilePath(FILE_ID, OLD_PATH, newPath)).thenReturn(1);
+
+        service.rebalance();
+
+        assertThat(newPath).isNotEqualTo(OLD_PATH);
+        assertThat(storageService.resolveFilePath(newPath)).hasContent("content");
+        assertThat(base.resolve(OLD_PATH)).doesNotExist();
+    }
+
+    @Test
+    void linkIsDroppedWhenTheRowWasDeletedMeanwhile() {
+        when(fileRepository.updateFilePath(FILE_ID, OLD_PATH, newPath)).thenReturn(0);
+        when(fileRepository.findById(FILE_ID)).thenReturn(Optional.empty());
+
+        service.rebalance();
+
+        assertThat(storageService.resolveFilePath(newPath)).doesNotExist();
+        // the deleting request removes the row's own path
+        assertThat(base.resolve(OLD_PATH)).exists();
+    }
+
+    @Test
+    void linkIsKeptWhenAnotherNodeMovedTheRowThere() {
+        when(fileRepository.updateFilePath(FILE_ID, OLD_PATH, newPath)).thenReturn(0);
+        when(fileRepository.findById(FILE_ID))
+                .thenReturn(Optional.of(FileEntity.builder().id(FILE_ID).filePath(newPath).build()));
+
+        service.rebalance();
+
+        assertThat(storageService.resolveFilePath(newPath)).hasContent("content");
+    }
+}
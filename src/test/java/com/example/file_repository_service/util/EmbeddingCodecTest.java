@@ -0,0 +1,81 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingCodecTest {
+
+    @Test
+    void binaryRoundTripIsExact() {
+        Random random = new Random(1);
+        float[] vector = new float[1536];
+        for (int i = 0; i < vector.length; i++) vector[i] = (float) random.nextGaussian();
+        vector[0] = Float.MIN_VALUE;
+        vector[1] = -0.0f;
+        vector[2] = Float.MAX_VALUE;
+
+        assertThat(EmbeddingCodec.decode(EmbeddingCodec.encode(vector))).containsExactly(vector);
+    }
+
+    @Test
+    void binaryFormIsLittleEndianFloat32() {
+        byte[] encoded = EmbeddingCodec.encode(new float[]{1.0f, -2.5f});
+
+        // 1.0f = 0x3F800000, -2.5f = 0xC0200000, least significant byte first
+        assertThat(encoded).containsExactly(0x00, 0x00, 0x80, 0x3F, 0x00, 0x00, 0x20, 0xC0);
+    }
+
+    @Test
+    void emptyVectorEncodesToNoBytes() {
+        assertThat(EmbeddingCodec.encode(new float[0])).isEmpty();
+        assertThat(EmbeddingCodec.decode(new byte[0])).isEmpty();
+    }
+
+    @Test
+    void decodeRejectsTruncatedInput() {
+        assertThatThrownBy(() -> EmbeddingCodec.decode(new byte[7]))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not a multiple of 4");
+    }
+
+    @Test
+    void vectorLiteralRoundTripIsExact() {
+        float[] vector = {0.1f, -1.5e-7f, 3.4028235e38f, 0f, 12345.678f};
+
+        String literal = EmbeddingCodec.toVectorLiteral(vector);
+
+        assertThat(literal).startsWith("[").endsWith("]").doesNotContain(" ");
+        assertThat(EmbeddingCodec.parseVectorLiteral(literal)).containsExactly(vector);
+    }
+
+    @Test
+    void parsesEmptyLiterals() {
+        assertThat(EmbeddingCodec.parseVectorLiteral("[]")).isEmpty();
+        assertThat(EmbeddingCodec.parseVectorLiteral("[  ]")).isEmpty();
+    }
+
+    @Test
+    void parsesWhitespaceAndExponents() {
+        assertThat(EmbeddingCodec.parseVectorLiteral(" [ 1 , -2.5 ,\t3e-3, 4.5E+2 ] "))
+                .containsExactly(1f, -2.5f, 3e-3f, 450f);
+    }
+
+    @Test
+    void parsesASingleDimension() {
+        assertThat(EmbeddingCodec.parseVectorLiteral("[0.25]")).containsExactly(0.25f);
+    }
+
+    @Test
+    void rejectsMalformedLiterals() {
+        assertThatThrownBy(() -> EmbeddingCodec.parseVectorLiteral("1,2,3"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EmbeddingCodec.parseVectorLiteral("]1,2["))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EmbeddingCodec.parseVectorLiteral("[1,,2]"))
+                .isInstanceOf(NumberFormatException.class);
+    }
+}
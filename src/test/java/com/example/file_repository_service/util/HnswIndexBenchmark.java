@@ -0,0 +1,87 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Recall@10 and latency of {@link HnswIndex} against its exact scan, on clustered and isotropic vectors.
+ * Not picked up by a plain {@code mvn test}; run it with
+ * {@code mvn test -Dtest=HnswIndexBenchmark [-Dbench.rows=20000 -Dbench.dimensions=256]}.
+ */
+class HnswIndexBenchmark {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 20_000);
+    private static final int DIMENSIONS = Integer.getInteger("bench.dimensions", 256);
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+    private static final int CLUSTERS = 200;
+
+    @Test
+    void clusteredRecall() {
+        Random random = new Random(1);
+        float[][] centres = new float[CLUSTERS][DIMENSIONS];
+        for (float[] centre : centres) {
+            for (int d = 0; d < DIMENSIONS; d++) centre[d] = (float) random.nextGaussian();
+        }
+        run("clustered", random, () -> {
+            float[] centre = centres[random.nextInt(CLUSTERS)];
+            float[] v = new float[DIMENSIONS];
+            for (int d = 0; d < DIMENSIONS; d++) v[d] = centre[d] + 0.5f * (float) random.nextGaussian();
+            return VectorMath.normalize(v);
+        });
+    }
+
+    @Test
+    void isotropicRecall() {
+        Random random = new Random(2);
+        run("isotropic", random, () -> {
+            float[] v = new float[DIMENSIONS];
+            for (int d = 0; d < DIMENSIONS; d++) v[d] = (float) random.nextGaussian();
+            return VectorMath.normalize(v);
+        });
+    }
+
+    private static void run(String name, Random random, VectorSource source) {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 200);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROWS; i++) {
+            index.add("f" + (i / 10), i % 10, source.next());
+        }
+        System.out.printf("%s %d x %dd: build %d ms%n", name, ROWS, DIMENSIONS, (System.nanoTime() - start) / 1_000_000);
+
+        float[][] queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) queries[q] = source.next();
+
+        for (int efSearch : new int[]{16, 64, 200}) {
+            long found = 0;
+            long expected = 0;
+            long approxNanos = 0;
+            long exactNanos = 0;
+            for (float[] query : queries) {
+                long t = System.nanoTime();
+                List<VectorHit> approx = index.search(query, K, efSearch);
+                approxNanos += System.nanoTime() - t;
+                t = System.nanoTime();
+                List<VectorHit> exact = index.exactSearch(query, K);
+                exactNanos += System.nanoTime() - t;
+
+                Set<String> keys = new HashSet<>();
+                exact.forEach(hit -> keys.add(hit.fileId() + "#" + hit.pageId()));
+                expected += keys.size();
+                for (VectorHit hit : approx) {
+                    if (keys.contains(hit.fileId() + "#" + hit.pageId())) found++;
+                }
+            }
+            System.out.printf("  ef=%d recall@%d=%.3f hnsw=%d us exact=%d us%n", efSearch, K,
+                    (double) found / expected, approxNanos / QUERIES / 1000, exactNanos / QUERIES / 1000);
+        }
+    }
+
+    private interface VectorSource {
+        float[] next();
+    }
+}
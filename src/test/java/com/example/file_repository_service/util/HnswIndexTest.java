@@ -0,0 +1,141 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 64;
+
+    @Test
+    void recallAgainstBruteForceOnSeededRandomSet() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 200);
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            index.add("file-" + (i / 50), i % 50, randomUnitVector(random));
+        }
+
+        int k = 10;
+        long found = 0;
+        long expected = 0;
+        for (int q = 0; q < 100; q++) {
+            float[] query = randomUnitVector(random);
+            Set<String> exact = keys(index.exactSearch(query, k));
+            expected += exact.size();
+            found += index.search(query, k, 64).stream().filter(h -> exact.contains(key(h))).count();
+        }
+
+        assertThat((double) found / expected).isGreaterThan(0.9);
+    }
+
+    @Test
+    void exactSearchRanksByDotProduct() {
+        HnswIndex index = new HnswIndex(2, 4, 16);
+        index.add("a", 1, new float[]{1, 0});
+        index.add("a", 2, VectorMath.normalize(new float[]{1, 1}));
+        index.add("b", 1, new float[]{0, 1});
+
+        List<VectorHit> hits = index.exactSearch(new float[]{1, 0}, 3);
+
+        assertThat(hits).extracting(HnswIndexTest::key).containsExactly("a#1", "a#2", "b#1");
+        assertThat(hits.get(0).score()).isEqualTo(1f);
+    }
+
+    @Test
+    void replacingAPageTombstonesTheOldVector() {
+        HnswIndex index = new HnswIndex(2, 4, 16);
+        index.add("a", 1, new float[]{1, 0});
+        index.add("a", 1, new float[]{0, 1});
+
+        assertThat(index.liveCount()).isEqualTo(1);
+        assertThat(index.deletedCount()).isEqualTo(1);
+        assertThat(index.search(new float[]{1, 0}, 5, 16)).hasSize(1)
+                .first().satisfies(h -> assertThat(h.score()).isEqualTo(0f));
+    }
+
+    @Test
+    void addingTheSameVectorAgainIsANoOp() {
+        HnswIndex index = new HnswIndex(2, 4, 16);
+        index.add("a", 1, new float[]{1, 0});
+        long version = index.version();
+
+        index.add("a", 1, new float[]{1, 0});
+
+        assertThat(index.liveCount()).isEqualTo(1);
+        assertThat(index.deletedCount()).isZero();
+        assertThat(index.version()).isEqualTo(version);
+    }
+
+    @Test
+    void removedPagesAndFilesAreNotReturned() {
+        HnswIndex index = new HnswIndex(2, 4, 16);
+        index.add("a", 1, new float[]{1, 0});
+        index.add("a", 2, new float[]{0, 1});
+        index.add("b", 1, VectorMath.normalize(new float[]{1, 1}));
+
+        index.removePages("a", Set.of(2));
+        assertThat(keys(index.exactSearch(new float[]{0, 1}, 5))).containsExactlyInAnyOrder("a#1", "b#1");
+
+        index.removeFile("b");
+        assertThat(keys(index.search(new float[]{0, 1}, 5, 16))).containsExactly("a#1");
+        assertThat(index.liveCount()).isEqualTo(1);
+    }
+
+    @Test
+    void snapshotRoundTripKeepsGraphAndWatermark() throws Exception {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 64);
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            index.add("file-" + (i / 10), i % 10, randomUnitVector(random));
+        }
+        index.removeFile("file-3");
+        index.advanceWatermark(1234L);
+        index.advanceWatermark(1000L);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        HnswIndex read = HnswIndex.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(read.watermark()).isEqualTo(1234L);
+        assertThat(read.liveCount()).isEqualTo(490);
+        assertThat(read.deletedCount()).isEqualTo(10);
+        float[] query = randomUnitVector(random);
+        assertThat(keys(read.search(query, 10, 64))).isEqualTo(keys(index.search(query, 10, 64)));
+    }
+
+    @Test
+    void rejectsVectorsOfAnotherSize() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 64);
+        assertThatThrownBy(() -> index.add("a", 1, new float[DIMENSIONS + 1]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    static float[] randomUnitVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return VectorMath.normalize(vector);
+    }
+
+    private static Set<String> keys(List<VectorHit> hits) {
+        Set<String> keys = new HashSet<>();
+        hits.forEach(h -> keys.add(key(h)));
+        return keys;
+    }
+
+    private static String key(VectorHit hit) {
+        return hit.fileId() + '#' + hit.pageId();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TopKSelectorTest {
+
+    @Test
+    void keepsHighestScoresBestFirst() {
+        TopKSelector selector = new TopKSelector(3);
+        float[] scores = {0.1f, 0.9f, 0.5f, 0.7f, 0.3f, 0.8f};
+        for (int i = 0; i < scores.length; i++) {
+            selector.offer(i, scores[i]);
+        }
+
+        TopKSelector.Result result = selector.drain();
+
+        assertThat(result.ids()).containsExactly(1, 5, 3);
+        assertThat(result.scores()).containsExactly(0.9f, 0.8f, 0.7f);
+        assertThat(selector.size()).isZero();
+    }
+
+    @Test
+    void thresholdIsOpenUntilFull() {
+        TopKSelector selector = new TopKSelector(2);
+        assertThat(selector.threshold()).isEqualTo(Float.NEGATIVE_INFINITY);
+
+        selector.offer(1, 0.4f);
+        selector.offer(2, 0.6f);
+        assertThat(selector.threshold()).isEqualTo(0.4f);
+
+        selector.offer(3, 0.2f);
+        assertThat(selector.threshold()).isEqualTo(0.4f);
+    }
+
+    @Test
+    void fewerOffersThanK() {
+        TopKSelector selector = new TopKSelector(10);
+        selector.offer(7, 0.5f);
+        selector.offer(8, 0.6f);
+
+        assertThat(selector.drain().ids()).containsExactly(8, 7);
+    }
+
+    @Test
+    void mergedPartialResultsMatchOneSelector() {
+        Random random = new Random(3);
+        float[] scores = new float[10_000];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextFloat();
+        }
+
+        TopKSelector whole = new TopKSelector(25);
+        TopKSelector left = new TopKSelector(25);
+        TopKSelector right = new TopKSelector(25);
+        for (int i = 0; i < scores.length; i++) {
+            whole.offer(i, scores[i]);
+            (i % 2 == 0 ? left : right).offer(i, scores[i]);
+        }
+        left.merge(right);
+
+        long[] expected = IntStream.range(0, scores.length).boxed()
+                .sorted((a, b) -> Float.compare(scores[b], scores[a]))
+                .limit(25).mapToLong(Integer::longValue).toArray();
+        assertThat(left.drain().ids()).containsExactly(expected);
+        assertThat(whole.drain().ids()).containsExactly(expected);
+    }
+
+    @Test
+    void rejectsNonPositiveK() {
+        assertThatThrownBy(() -> new TopKSelector(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Nanoseconds per comparison of the cosine that ranked List&lt;Float&gt; vectors before, the scalar dot kernel
+ * and the SIMD one, at 768 and 1536 dimensions. Not picked up by a plain {@code mvn test}; run it with
+ * {@code mvn test -Dtest=VectorMathBenchmark [-Dbench.rows=2000 -Dbench.rounds=20]}.
+ */
+class VectorMathBenchmark {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 2000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 20);
+
+    // results land here so the JIT cannot drop the scans as dead code
+    private static volatile double sink;
+
+    @Test
+    void similarityKernels() {
+        System.out.printf("%d vectors x %d rounds, ns per comparison (best round), SIMD %s%n",
+                ROWS, ROUNDS, VectorMath.SIMD_ENABLED ? "on" : "unavailable");
+        for (int dimensions : new int[]{768, 1536}) {
+            Random random = new Random(dimensions);
+            float[] query = VectorMath.normalize(gaussian(random, dimensions));
+            float[][] rows = new float[ROWS][];
+            List<List<Float>> boxedRows = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                rows[i] = VectorMath.normalize(gaussian(random, dimensions));
+                boxedRows.add(boxed(rows[i]));
+            }
+            List<Float> boxedQuery = boxed(query);
+
+            double boxedNanos = best(() -> {
+                double sum = 0;
+                for (List<Float> row : boxedRows) sum += boxedCosine(row, boxedQuery);
+                return sum;
+            });
+            double scalarNanos = best(() -> {
+                double sum = 0;
+                for (float[] row : rows) sum += VectorMath.scalarDot(row, query, dimensions);
+                return sum;
+            });
+            double simdNanos = VectorMath.SIMD_ENABLED ? best(() -> {
+                double sum = 0;
+                for (float[] row : rows) sum += SimdVectorMath.dot(row, query, dimensions);
+                return sum;
+            }) : Double.NaN;
+
+            System.out.printf("  dim %4d  boxed cosine %6.0f  scalar dot %5.0f  SIMD dot %5.0f%n",
+                    dimensions, boxedNanos, scalarNanos, simdNanos);
+        }
+    }
+
+    // lowest time per comparison over the rounds, the first rounds also warm the JIT up
+    private static double best(Scan scan) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            sink = scan.run();
+            best = Math.min(best, (double) (System.nanoTime() - start) / ROWS);
+        }
+        return best;
+    }
+
+    // the ranking EmbeddingService used before vectors were normalized float[]
+    private static double boxedCosine(List<Float> v1, List<Float> v2) {
+        if (v1.isEmpty() || v2.isEmpty()) return 0;
+        double dot = 0, mag1 = 0, mag2 = 0;
+        int len = Math.min(v1.size(), v2.size());
+        for (int i = 0; i < len; i++) {
+            dot += v1.get(i) * v2.get(i);
+            mag1 += v1.get(i) * v1.get(i);
+            mag2 += v2.get(i) * v2.get(i);
+        }
+        return dot / (Math.sqrt(mag1) * Math.sqrt(mag2) + 1e-10);
+    }
+
+    private static List<Float> boxed(float[] vector) {
+        List<Float> list = new ArrayList<>(vector.length);
+        for (float v : vector) list.add(v);
+        return list;
+    }
+
+    private static float[] gaussian(Random random, int dimensions) {
+        float[] v = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) v[i] = (float) random.nextGaussian();
+        return v;
+    }
+
+    private interface Scan {
+        double run();
+    }
+}
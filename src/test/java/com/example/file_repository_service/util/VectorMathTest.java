@@ -0,0 +1,113 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VectorMathTest {
+
+    // every tail length around a few lane counts, plus the embedding sizes in use
+    private static final int[] LENGTHS = lengths();
+
+    @Test
+    void simdAndScalarFloatDotAgree() {
+        assumeTrue(VectorMath.SIMD_ENABLED, "jdk.incubator.vector is not available");
+        Random random = new Random(1);
+        for (int length : LENGTHS) {
+            float[] a = gaussian(random, length);
+            float[] b = gaussian(random, length);
+            double expected = exactDot(a, b, length);
+
+            assertThat((double) SimdVectorMath.dot(a, b, length)).as("SIMD, length %d", length)
+                    .isCloseTo(expected, within(1e-4 * Math.max(1, length)));
+            assertThat((double) VectorMath.scalarDot(a, b, length)).as("scalar, length %d", length)
+                    .isCloseTo(expected, within(1e-4 * Math.max(1, length)));
+        }
+    }
+
+    @Test
+    void floatDotUsesTheRequestedPrefix() {
+        float[] a = {1, 2, 3, 4, 5};
+        float[] b = {1, 1, 1, 1, 100};
+
+        assertThat(VectorMath.dot(a, b, 4)).isEqualTo(10f);
+        assertThat(VectorMath.dot(a, b)).isEqualTo(510f);
+        assertThat(VectorMath.dot(a, new float[]{2, 2})).isEqualTo(6f);
+    }
+
+    @Test
+    void simdAndScalarInt8DotAgreeExactly() {
+        assumeTrue(VectorMath.SIMD_ENABLED && SimdVectorMath.INT8_SUPPORTED, "no SIMD int8 kernel on this JVM");
+        Random random = new Random(2);
+        for (int length : LENGTHS) {
+            byte[] a = bytes(random, length);
+            byte[] b = bytes(random, length);
+
+            assertThat(VectorMath.dot(a, b, length, true)).as("length %d", length)
+                    .isEqualTo(VectorMath.dot(a, b, length, false));
+        }
+    }
+
+    @Test
+    void scalarInt8FallbackIsExact() {
+        Random random = new Random(3);
+        for (int length : LENGTHS) {
+            byte[] a = bytes(random, length);
+            byte[] b = bytes(random, length);
+            long expected = 0;
+            for (int i = 0; i < length; i++) expected += a[i] * b[i];
+
+            assertThat(VectorMath.dot(a, b, length, false)).as("length %d", length).isEqualTo((int) expected);
+        }
+    }
+
+    @Test
+    void int8DotDoesNotOverflowAtTheExtremes() {
+        byte[] a = new byte[1536];
+        byte[] b = new byte[1536];
+        Arrays.fill(a, Byte.MIN_VALUE);
+        Arrays.fill(b, Byte.MIN_VALUE);
+
+        assertThat(VectorMath.dot(a, b)).isEqualTo(1536 * 128 * 128);
+        assertThat(VectorMath.dot(a, b, 1536, false)).isEqualTo(1536 * 128 * 128);
+    }
+
+    @Test
+    void normalizeLeavesZeroVectorsAlone() {
+        assertThat(VectorMath.normalize(new float[]{0, 0, 0})).containsExactly(0, 0, 0);
+        assertThat(VectorMath.normalize(new float[]{3, 4})).containsExactly(new float[]{0.6f, 0.8f}, within(1e-6f));
+    }
+
+    private static int[] lengths() {
+        int[] lengths = new int[70 + 4];
+        for (int i = 0; i < 70; i++) lengths[i] = i;
+        lengths[70] = 255;
+        lengths[71] = 768;
+        lengths[72] = 1536;
+        lengths[73] = 1537;
+        return lengths;
+    }
+
+    private static double exactDot(float[] a, float[] b, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) sum += (double) a[i] * b[i];
+        return sum;
+    }
+
+    private static float[] gaussian(Random random, int length) {
+        float[] v = new float[length];
+        for (int i = 0; i < length; i++) v[i] = (float) random.nextGaussian();
+        return v;
+    }
+
+    private static byte[] bytes(Random random, int length) {
+        byte[] v = new byte[length];
+        random.nextBytes(v);
+        return v;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Recall@10 and latency of the quantized two-stage search against the exact float scan, and the effect of
+ * centring the int8 query. Not picked up by a plain {@code mvn test}; run it with
+ * {@code mvn test -Dtest=VectorQuantizerBenchmark [-Dbench.rows=50000 -Dbench.dimensions=1536 -Dbench.threads=1]}.
+ */
+class VectorQuantizerBenchmark {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 50_000);
+    private static final int DIMENSIONS = Integer.getInteger("bench.dimensions", 1536);
+    private static final int THREADS = Integer.getInteger("bench.threads", 1);
+    private static final int K = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void twoStageSearch() throws Exception {
+        Random random = new Random(1);
+        float[][] centres = new float[500][DIMENSIONS];
+        for (float[] centre : centres) {
+            for (int d = 0; d < DIMENSIONS; d++) centre[d] = (float) random.nextGaussian();
+        }
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            for (int i = 0; i < ROWS; i++) {
+                segment.append("f" + (i / 10), i % 10, clustered(centres, random));
+            }
+            segment.retrainQuantizationIfNeeded();
+
+            List<float[]> queries = new ArrayList<>();
+            for (int q = 0; q < 100; q++) queries.add(clustered(centres, random));
+
+            System.out.printf("%d x %dd clustered, %d queries, %d thread(s)%n", ROWS, DIMENSIONS, queries.size(), THREADS);
+            for (VectorQuantizer.Mode mode : VectorQuantizer.Mode.values()) {
+                for (int multiplier : mode == VectorQuantizer.Mode.NONE ? new int[]{1} : new int[]{1, 4, 10}) {
+                    long found = 0;
+                    long expected = 0;
+                    long nanos = 0;
+                    for (float[] query : queries) {
+                        long t = System.nanoTime();
+                        List<VectorHit> hits = segment.search(query, K, pool, 8192, mode, multiplier);
+                        nanos += System.nanoTime() - t;
+                        Set<String> exact = keys(segment.search(query, K, pool, 8192, VectorQuantizer.Mode.NONE, 1));
+                        expected += exact.size();
+                        found += keys(hits).stream().filter(exact::contains).count();
+                    }
+                    System.out.printf("  %s x%d recall@%d=%.3f avg=%.1f ms%n", mode, multiplier, K,
+                            (double) found / expected, nanos / 1e6 / queries.size());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // rows sharing a strong mean direction, where a centred query skews the int8 shortlist
+    @Test
+    void int8QueryCentring() {
+        int rows = 20_000;
+        int dimensions = 768;
+        double meanWeight = 0.6;
+        Random random = new Random(7);
+        float[] mean = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) mean[d] = (float) random.nextGaussian();
+        VectorMath.normalize(mean);
+        float[][] vectors = new float[rows][dimensions];
+        for (float[] v : vectors) {
+            for (int d = 0; d < dimensions; d++) {
+                v[d] = (float) (meanWeight * mean[d] + (1 - meanWeight) * random.nextGaussian() / Math.sqrt(dimensions));
+            }
+            VectorMath.normalize(v);
+        }
+        VectorQuantizer quantizer = VectorQuantizer.fit(List.of(vectors).subList(0, 10_000), dimensions);
+        byte[][] codes = new byte[rows][dimensions];
+        for (int i = 0; i < rows; i++) quantizer.quantizeInt8(vectors[i], codes[i]);
+
+        System.out.printf("%d x %dd, mean weight %.1f, 200 queries%n", rows, dimensions, meanWeight);
+        for (int multiplier : new int[]{1, 2, 4, 8}) {
+            long centredFound = 0;
+            long uncentredFound = 0;
+            long expected = 0;
+            for (int q = 0; q < 200; q++) {
+                float[] query = vectors[random.nextInt(rows)];
+                byte[] centred = new byte[dimensions];
+                quantizer.quantizeInt8(query, centred);
+                byte[] uncentred = new byte[dimensions];
+                VectorQuantizer.quantizeInt8Query(query, uncentred);
+
+                IntToDoubleFunction exactScore = i -> VectorMath.dot(query, vectors[i]);
+                Set<Integer> exact = top(IntStream.range(0, rows).boxed().toList(), K, exactScore);
+                // the shortlist is rescored with the float rows, as VectorSegment does
+                Set<Integer> viaCentred = top(top(IntStream.range(0, rows).boxed().toList(), K * multiplier,
+                        i -> VectorMath.dot(centred, codes[i])), K, exactScore);
+                Set<Integer> viaUncentred = top(top(IntStream.range(0, rows).boxed().toList(), K * multiplier,
+                        i -> VectorMath.dot(uncentred, codes[i])), K, exactScore);
+
+                expected += exact.size();
+                centredFound += viaCentred.stream().filter(exact::contains).count();
+                uncentredFound += viaUncentred.stream().filter(exact::contains).count();
+            }
+            System.out.printf("  rescore x%d recall@%d: centred query=%.3f uncentred query=%.3f%n", multiplier, K,
+                    (double) centredFound / expected, (double) uncentredFound / expected);
+        }
+    }
+
+    private static float[] clustered(float[][] centres, Random random) {
+        float[] centre = centres[random.nextInt(centres.length)];
+        float[] v = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) v[d] = centre[d] + 1.2f * (float) random.nextGaussian() + 0.3f;
+        return VectorMath.normalize(v);
+    }
+
+    private static Set<Integer> top(Collection<Integer> ids, int k, IntToDoubleFunction score) {
+        TopKSelector selector = new TopKSelector(k);
+        for (int id : ids) selector.offer(id, (float) score.applyAsDouble(id));
+        Set<Integer> top = new HashSet<>();
+        for (long id : selector.drain().ids()) top.add((int) id);
+        return top;
+    }
+
+    private static Set<String> keys(List<VectorHit> hits) {
+        Set<String> keys = new HashSet<>();
+        hits.forEach(hit -> keys.add(hit.fileId() + "#" + hit.pageId()));
+        return keys;
+    }
+}
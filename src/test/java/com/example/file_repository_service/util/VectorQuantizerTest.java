@@ -0,0 +1,142 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VectorQuantizerTest {
+
+    private static final int DIMENSIONS = 256;
+
+    @Test
+    void int8ShortlistKeepsExactNeighboursOnOffCentreData() {
+        // embeddings share a common direction, which is what the fitted centre removes from the rows
+        float[][] rows = offCentreVectors(5000, 0.6, 7);
+        VectorQuantizer quantizer = VectorQuantizer.fit(Arrays.asList(rows), DIMENSIONS);
+        byte[][] quantized = new byte[rows.length][DIMENSIONS];
+        for (int i = 0; i < rows.length; i++) {
+            quantizer.quantizeInt8(rows[i], quantized[i]);
+        }
+
+        int k = 10;
+        long found = 0;
+        Random random = new Random(11);
+        for (int q = 0; q < 50; q++) {
+            float[] query = rows[random.nextInt(rows.length)];
+            byte[] quantizedQuery = new byte[DIMENSIONS];
+            VectorQuantizer.quantizeInt8Query(query, quantizedQuery);
+
+            Set<Long> exact = topK(rows.length, k, i -> VectorMath.dot(query, rows[i]));
+            Set<Long> shortlist = topK(rows.length, 2 * k, i -> VectorMath.dot(quantizedQuery, quantized[i]));
+            found += exact.stream().filter(shortlist::contains).count();
+        }
+
+        assertThat((double) found / (50 * k)).isGreaterThan(0.95);
+    }
+
+    @Test
+    void int8QueryIsScaledByItsLargestComponent() {
+        byte[] out = new byte[3];
+        VectorQuantizer.quantizeInt8Query(new float[]{0.5f, -0.125f, 0f}, out);
+        assertThat(out).containsExactly(127, -32, 0);
+
+        VectorQuantizer.quantizeInt8Query(new float[3], out);
+        assertThat(out).containsExactly(0, 0, 0);
+    }
+
+    @Test
+    void int8RowsAreClampedToTheScale() {
+        VectorQuantizer quantizer = VectorQuantizer.defaults(DIMENSIONS);
+        float[] vector = new float[DIMENSIONS];
+        vector[0] = 1f;
+        vector[1] = -1f;
+        byte[] out = new byte[DIMENSIONS];
+
+        quantizer.quantizeInt8(vector, out);
+
+        assertThat(out[0]).isEqualTo((byte) 127);
+        assertThat(out[1]).isEqualTo((byte) -127);
+        assertThat(out[2]).isZero();
+    }
+
+    @Test
+    void binaryCodesCountDifferingSides() {
+        VectorQuantizer quantizer = VectorQuantizer.defaults(DIMENSIONS);
+        float[] a = new float[DIMENSIONS];
+        float[] b = new float[DIMENSIONS];
+        Arrays.fill(a, 1f);
+        Arrays.fill(b, 1f);
+        b[3] = -1f;
+        b[200] = -1f;
+        long[] codeA = new long[VectorQuantizer.binaryWords(DIMENSIONS)];
+        long[] codeB = new long[VectorQuantizer.binaryWords(DIMENSIONS)];
+
+        quantizer.quantizeBinary(a, codeA);
+        quantizer.quantizeBinary(b, codeB);
+
+        assertThat(VectorQuantizer.hammingDistance(codeA, codeA)).isZero();
+        assertThat(VectorQuantizer.hammingDistance(codeA, codeB)).isEqualTo(2);
+        assertThat(VectorQuantizer.binaryWords(65)).isEqualTo(2);
+    }
+
+    @Test
+    void parametersSurviveRoundTrip() throws Exception {
+        VectorQuantizer fitted = VectorQuantizer.fit(Arrays.asList(offCentreVectors(200, 0.3, 3)), DIMENSIONS);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        fitted.writeTo(new DataOutputStream(bytes));
+
+        VectorQuantizer read = VectorQuantizer.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(read.id()).isEqualTo(fitted.id());
+        assertThat(read.trainedRows()).isEqualTo(200);
+        assertThat(read.dimensions()).isEqualTo(DIMENSIONS);
+        float[] vector = offCentreVectors(1, 0.3, 5)[0];
+        byte[] expected = new byte[DIMENSIONS];
+        byte[] actual = new byte[DIMENSIONS];
+        fitted.quantizeInt8(vector, expected);
+        read.quantizeInt8(vector, actual);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    static float[][] offCentreVectors(int count, double meanWeight, long seed) {
+        Random random = new Random(seed);
+        float[] mean = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            mean[d] = (float) random.nextGaussian();
+        }
+        VectorMath.normalize(mean);
+        float[][] vectors = new float[count][DIMENSIONS];
+        for (int i = 0; i < count; i++) {
+            for (int d = 0; d < DIMENSIONS; d++) {
+                vectors[i][d] = (float) (meanWeight * mean[d] + (1 - meanWeight) * random.nextGaussian() / Math.sqrt(DIMENSIONS));
+            }
+            VectorMath.normalize(vectors[i]);
+        }
+        return vectors;
+    }
+
+    private static Set<Long> topK(int n, int k, RowScore score) {
+        TopKSelector selector = new TopKSelector(k);
+        for (int i = 0; i < n; i++) {
+            selector.offer(i, score.of(i));
+        }
+        Set<Long> ids = new HashSet<>();
+        for (long id : selector.drain().ids()) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private interface RowScore {
+        float of(int row);
+    }
+}
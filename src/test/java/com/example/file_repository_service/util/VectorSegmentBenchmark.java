@@ -0,0 +1,69 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Exact scan throughput of a {@link VectorSegment} with half of its rows tombstoned. Not picked up by a plain
+ * {@code mvn test}; run it with
+ * {@code mvn test -Dtest=VectorSegmentBenchmark [-Dbench.rows=50000 -Dbench.dimensions=1536 -Dbench.threads=1]}.
+ */
+class VectorSegmentBenchmark {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 50_000);
+    private static final int DIMENSIONS = Integer.getInteger("bench.dimensions", 1536);
+    private static final int THREADS = Integer.getInteger("bench.threads", 1);
+    private static final int ROUNDS = 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void exactScan() throws Exception {
+        Random random = new Random(1);
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            float[] last = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < ROWS; i++) {
+                last = unitVector(random);
+                segment.append("f" + (i / 10), i % 10, last);
+            }
+            System.out.printf("append %d x %dd: %d ms%n", ROWS, DIMENSIONS, (System.nanoTime() - start) / 1_000_000);
+
+            String lastFile = "f" + ((ROWS - 1) / 10);
+            for (int f = 0; f < ROWS / 10; f += 2) {
+                if (!lastFile.equals("f" + f)) segment.removeFile("f" + f);
+            }
+
+            long best = Long.MAX_VALUE;
+            List<VectorHit> hits = List.of();
+            for (int round = 0; round < ROUNDS; round++) {
+                long t = System.nanoTime();
+                hits = segment.search(last, 10, pool, 8192, VectorQuantizer.Mode.NONE, 1);
+                best = Math.min(best, System.nanoTime() - t);
+            }
+            assertThat(hits.get(0).fileId()).isEqualTo(lastFile);
+
+            // tombstoned rows are skipped without being read, only live rows count
+            double gigabytes = (double) segment.liveCount() * DIMENSIONS * Float.BYTES / 1e9;
+            System.out.printf("scan live=%d deleted=%d threads=%d: best %.1f ms, %.1f GB/s%n",
+                    segment.liveCount(), segment.deletedCount(), THREADS, best / 1e6, gigabytes / (best / 1e9));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static float[] unitVector(Random random) {
+        float[] v = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) v[d] = (float) random.nextGaussian();
+        return VectorMath.normalize(v);
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.file_repository_service.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VectorSegmentTest {
+
+    private static final int DIMENSIONS = 32;
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendedRowsAreFoundExactly() throws Exception {
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            float[] target = unitVector(new Random(1));
+            segment.append("a", 1, target);
+            segment.append("a", 2, unitVector(new Random(2)));
+            segment.append("b", 1, unitVector(new Random(3)));
+
+            List<VectorHit> hits = search(segment, target, 3, VectorQuantizer.Mode.NONE);
+
+            assertThat(hits).hasSize(3);
+            assertThat(hits.get(0)).isEqualTo(new VectorHit("a", 1, VectorMath.dot(target, target)));
+            assertThat(segment.liveCount()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void tombstonesHideReplacedAndRemovedPages() throws Exception {
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            Random random = new Random(4);
+            segment.append("a", 1, unitVector(random));
+            segment.append("a", 2, unitVector(random));
+            segment.append("b", 1, unitVector(random));
+            segment.append("a", 1, unitVector(random));
+
+            segment.removePages("a", Set.of(2));
+            assertThat(keys(search(segment, unitVector(random), 10, VectorQuantizer.Mode.NONE)))
+                    .containsExactlyInAnyOrder("a#1", "b#1");
+
+            segment.removeFile("b");
+            assertThat(keys(search(segment, unitVector(random), 10, VectorQuantizer.Mode.NONE)))
+                    .containsExactly("a#1");
+            assertThat(segment.liveCount()).isEqualTo(1);
+            assertThat(segment.deletedCount()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void appendingTheSameVectorAgainKeepsTheRow() throws Exception {
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            float[] vector = unitVector(new Random(5));
+            segment.append("a", 1, vector);
+            segment.append("a", 1, vector.clone());
+
+            assertThat(segment.liveCount()).isEqualTo(1);
+            assertThat(segment.deletedCount()).isZero();
+        }
+    }
+
+    @Test
+    void compactionRoundTripKeepsLiveRowsAcrossReopen() throws Exception {
+        Random random = new Random(6);
+        float[] query = unitVector(random);
+        List<VectorHit> before;
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            for (int i = 0; i < 300; i++) {
+                segment.append("file-" + (i / 10), i % 10, unitVector(random));
+            }
+            for (int f = 0; f < 30; f += 3) {
+                segment.removeFile("file-" + f);
+            }
+            before = search(segment, query, 20, VectorQuantizer.Mode.NONE);
+
+            segment.compact();
+
+            assertThat(segment.liveCount()).isEqualTo(200);
+            assertThat(segment.deletedCount()).isZero();
+            assertThat(search(segment, query, 20, VectorQuantizer.Mode.NONE)).isEqualTo(before);
+            segment.advanceWatermark(42L);
+        }
+
+        try (VectorSegment reopened = VectorSegment.open(directory, DIMENSIONS)) {
+            assertThat(reopened.liveCount()).isEqualTo(200);
+            assertThat(reopened.deletedCount()).isZero();
+            assertThat(reopened.watermark()).isEqualTo(42L);
+            assertThat(search(reopened, query, 20, VectorQuantizer.Mode.NONE)).isEqualTo(before);
+        }
+    }
+
+    @Test
+    void tombstonesSurviveReopen() throws Exception {
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            segment.append("a", 1, unitVector(new Random(7)));
+            segment.append("b", 1, unitVector(new Random(8)));
+            segment.removeFile("a");
+        }
+
+        try (VectorSegment reopened = VectorSegment.open(directory, DIMENSIONS)) {
+            assertThat(reopened.liveCount()).isEqualTo(1);
+            assertThat(reopened.deletedCount()).isEqualTo(1);
+            assertThat(keys(search(reopened, unitVector(new Random(9)), 5, VectorQuantizer.Mode.NONE)))
+                    .containsExactly("b#1");
+        }
+    }
+
+    @Test
+    void quantizedSearchesRescoreToTheExactResult() throws Exception {
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            Random random = new Random(10);
+            for (int i = 0; i < 2000; i++) {
+                segment.append("file-" + (i / 20), i % 20, unitVector(random));
+            }
+            segment.retrainQuantizationIfNeeded();
+
+            float[] query = unitVector(random);
+            Set<String> exact = keys(search(segment, query, 5, VectorQuantizer.Mode.NONE));
+            for (VectorQuantizer.Mode mode : new VectorQuantizer.Mode[]{VectorQuantizer.Mode.INT8, VectorQuantizer.Mode.BINARY}) {
+                List<VectorHit> hits = segment.search(query, 5, POOL, 128, mode, 100);
+                assertThat(keys(hits)).as(mode.name()).isEqualTo(exact);
+            }
+        }
+    }
+
+    @Test
+    void createReplacesAnExistingSegment() throws Exception {
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            segment.append("a", 1, unitVector(new Random(11)));
+            segment.advanceWatermark(7L);
+        }
+
+        try (VectorSegment created = VectorSegment.create(directory, DIMENSIONS)) {
+            assertThat(created.liveCount()).isZero();
+            assertThat(created.watermark()).isEqualTo(Long.MIN_VALUE);
+        }
+    }
+
+    @Test
+    void openSegmentIsLockedAgainstASecondWriter() throws Exception {
+        try (VectorSegment segment = VectorSegment.open(directory, DIMENSIONS)) {
+            assertThatThrownBy(() -> VectorSegment.open(directory, DIMENSIONS))
+                    .isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(() -> VectorSegment.create(directory, DIMENSIONS))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+
+        VectorSegment.open(directory, DIMENSIONS).close();
+    }
+
+    private static List<VectorHit> search(VectorSegment segment, float[] query, int k, VectorQuantizer.Mode mode) {
+        // small chunks so the fork-join split and merge are exercised
+        return segment.search(query, k, POOL, 16, mode, 1);
+    }
+
+    private static float[] unitVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return VectorMath.normalize(vector);
+    }
+
+    private static Set<String> keys(List<VectorHit> hits) {
+        Set<String> keys = new HashSet<>();
+        hits.forEach(h -> keys.add(h.fileId() + '#' + h.pageId()));
+        return keys;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.file_repository_service.util;
+
+import com.example.file_repository_service.config.ZipValidationProperties;
+import com.example.file_repository_service.entity.TenantConfig;
+import com.example.file_repository_service.exception.InvalidFileException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZipValidatorTest {
+
+    private final MediaTypeDetector mediaTypeDetector = new MediaTypeDetector();
+    private final ZipValidationProperties properties = new ZipValidationProperties();
+    private final ZipValidator validator = new ZipValidator(new FileValidator(mediaTypeDetector), mediaTypeDetector, properties);
+
+    @Test
+    void returnsTheArchiveTypeFromTheSinglePass() throws Exception {
+        byte[] zip = zip("a.txt", "hello", "docs/b.txt", "world");
+
+        String mediaType = validator.validate(new ByteArrayInputStream(zip), zip.length, tenant(Map.of()), "upload.zip");
+
+        assertThat(mediaType).isEqualTo("application/zip");
+    }
+
+    @Test
+    void entriesAreCheckedAgainstTheTenantRules() throws Exception {
+        byte[] zip = zip("a.txt", "hello");
+        TenantConfig tenant = tenant(Map.of("forbiddenMimeTypes", List.of("text/plain")));
+
+        assertThatThrownBy(() -> validator.validate(new ByteArrayInputStream(zip), zip.length, tenant, "upload.zip"))
+                .isInstanceOf(InvalidFileException.class)
+                .hasMessageContaining("text/plain");
+    }
+
+    @Test
+    void emptyArchiveIsRejected() throws Exception {
+        byte[] zip = zip();
+
+        assertThatThrownBy(() -> validator.validate(new ByteArrayInputStream(zip), zip.length, tenant(Map.of()), "upload.zip"))
+                .isInstanceOf(InvalidFileException.class)
+                .hasMessageContaining("empty");
+    }
+
+    @Test
+    void highlyCompressedEntryIsRejected() throws Exception {
+        properties.setMaxCompressionRatio(10);
+        byte[] zip = zip("a.txt", "a".repeat(100_000));
+
+        assertThatThrownBy(() -> validator.validate(new ByteArrayInputStream(zip), zip.length, tenant(Map.of()), "upload.zip"))
+                .isInstanceOf(InvalidFileException.class)
+                .hasMessageContaining("compression ratio");
+    }
+
+    private static TenantConfig tenant(Map<String, Object> config) {
+        return TenantConfig.builder().tenantId(1).tenantCode("T1").config(config).build();
+    }
+
+    private static byte[] zip(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}